@@ -372,6 +372,7 @@ async function syncInternal(options = {}, syncStatusChangeCallbackFunction, down
     mandatoryInstallMode: CodePush.InstallMode.IMMEDIATE,
     minimumBackgroundDuration: 0,
     updateDialog: null,
+    decompressionThreadCount: 1,
     ...options
   };
 
@@ -464,7 +465,9 @@ async function syncInternal(options = {}, syncStatusChangeCallbackFunction, down
             break;
         }
       }
-      const localPackage = await remotePackage.download(downloadProgressCallback, downloadStatusCallback);
+      const localPackage = await remotePackage.download(downloadProgressCallback, downloadStatusCallback, {
+        decompressionThreadCount: syncOptions.decompressionThreadCount
+      });
 
       // Determine the correct install mode based on whether the update is mandatory or not.
       resolvedInstallMode = localPackage.isMandatory ? syncOptions.mandatoryInstallMode : syncOptions.installMode;
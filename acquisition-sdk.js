@@ -131,7 +131,8 @@ class AcquisitionManager {
                 packageHash: updateInfo.package_hash,
                 packageSize: updateInfo.package_size,
                 downloadUrl: updateInfo.download_url,
-                isBundlePatchingEnabled: updateInfo.is_bundle_patching_enabled
+                isBundlePatchingEnabled: updateInfo.is_bundle_patching_enabled,
+                patchBasePackageHash: updateInfo.patch_base_package_hash
             };
 
             callback(null, remotePackage);
@@ -0,0 +1,109 @@
+#include <jni.h>
+#include <stdio.h>
+#include <stdlib.h>
+#include <brotli/decode.h>
+
+// Keep in sync with CodePushBrotliDecoder.
+#define DECODE_FILE_OK 0
+#define DECODE_FILE_IO_ERROR 1
+#define DECODE_FILE_CORRUPT 2
+#define DECODE_FILE_BUFFER_SIZE (64 * 1024)
+
+extern "C"
+JNIEXPORT jlong JNICALL
+Java_com_microsoft_codepush_react_CodePushBrotliDecoder_nativeCreate(JNIEnv *env, jclass clazz) {
+    return reinterpret_cast<jlong>(BrotliDecoderCreateInstance(nullptr, nullptr, nullptr));
+}
+
+extern "C"
+JNIEXPORT void JNICALL
+Java_com_microsoft_codepush_react_CodePushBrotliDecoder_nativeDestroy(JNIEnv *env, jclass clazz, jlong handle) {
+    BrotliDecoderDestroyInstance(reinterpret_cast<BrotliDecoderState *>(handle));
+}
+
+// Decodes input[inputOffset, inputOffset + inputLength) into output[0, outputLength), both direct
+// buffers. The number of bytes consumed and produced are stored in counts.
+extern "C"
+JNIEXPORT jint JNICALL
+Java_com_microsoft_codepush_react_CodePushBrotliDecoder_nativeDecompress(JNIEnv *env, jclass clazz, jlong handle,
+                                                                         jobject input, jint inputOffset, jint inputLength,
+                                                                         jobject output, jint outputLength,
+                                                                         jintArray counts) {
+    const uint8_t *nextIn = static_cast<const uint8_t *>(env->GetDirectBufferAddress(input)) + inputOffset;
+    uint8_t *nextOut = static_cast<uint8_t *>(env->GetDirectBufferAddress(output));
+    size_t availableIn = inputLength;
+    size_t availableOut = outputLength;
+
+    BrotliDecoderResult result = BrotliDecoderDecompressStream(reinterpret_cast<BrotliDecoderState *>(handle),
+                                                               &availableIn, &nextIn, &availableOut, &nextOut, nullptr);
+
+    jint values[2] = {static_cast<jint>(inputLength - availableIn), static_cast<jint>(outputLength - availableOut)};
+    env->SetIntArrayRegion(counts, 0, 2, values);
+    return result;
+}
+
+static int decodeFile(const char *sourcePath, const char *destinationPath) {
+    FILE *source = fopen(sourcePath, "rb");
+    if (source == nullptr) {
+        return DECODE_FILE_IO_ERROR;
+    }
+    FILE *destination = fopen(destinationPath, "wb");
+    if (destination == nullptr) {
+        fclose(source);
+        return DECODE_FILE_IO_ERROR;
+    }
+
+    BrotliDecoderState *state = BrotliDecoderCreateInstance(nullptr, nullptr, nullptr);
+    uint8_t *inputBuffer = static_cast<uint8_t *>(malloc(DECODE_FILE_BUFFER_SIZE));
+    uint8_t *outputBuffer = static_cast<uint8_t *>(malloc(DECODE_FILE_BUFFER_SIZE));
+    const uint8_t *nextIn = inputBuffer;
+    size_t availableIn = 0;
+    int status = state != nullptr && inputBuffer != nullptr && outputBuffer != nullptr ? DECODE_FILE_OK : DECODE_FILE_IO_ERROR;
+    BrotliDecoderResult result = BROTLI_DECODER_RESULT_NEEDS_MORE_INPUT;
+    while (status == DECODE_FILE_OK && result != BROTLI_DECODER_RESULT_SUCCESS) {
+        if (result == BROTLI_DECODER_RESULT_NEEDS_MORE_INPUT) {
+            availableIn = fread(inputBuffer, 1, DECODE_FILE_BUFFER_SIZE, source);
+            nextIn = inputBuffer;
+            if (availableIn == 0) {
+                status = ferror(source) ? DECODE_FILE_IO_ERROR : DECODE_FILE_CORRUPT;
+                break;
+            }
+        } else if (result == BROTLI_DECODER_RESULT_ERROR) {
+            status = DECODE_FILE_CORRUPT;
+            break;
+        }
+
+        uint8_t *nextOut = outputBuffer;
+        size_t availableOut = DECODE_FILE_BUFFER_SIZE;
+        result = BrotliDecoderDecompressStream(state, &availableIn, &nextIn, &availableOut, &nextOut, nullptr);
+        size_t produced = DECODE_FILE_BUFFER_SIZE - availableOut;
+        if (produced > 0 && fwrite(outputBuffer, 1, produced, destination) != produced) {
+            status = DECODE_FILE_IO_ERROR;
+            break;
+        }
+    }
+
+    if (state != nullptr) BrotliDecoderDestroyInstance(state);
+    free(inputBuffer);
+    free(outputBuffer);
+    fclose(source);
+    if (fclose(destination) != 0 && status == DECODE_FILE_OK) {
+        status = DECODE_FILE_IO_ERROR;
+    }
+    return status;
+}
+
+extern "C"
+JNIEXPORT jint JNICALL
+Java_com_microsoft_codepush_react_CodePushBrotliDecoder_nativeDecodeFile(JNIEnv *env, jclass clazz,
+                                                                         jstring source_path, jstring destination_path) {
+    const char *sourcePath = env->GetStringUTFChars(source_path, 0);
+    const char *destinationPath = env->GetStringUTFChars(destination_path, 0);
+
+    int result = decodeFile(sourcePath, destinationPath);
+
+    env->ReleaseStringUTFChars(source_path, sourcePath);
+    env->ReleaseStringUTFChars(destination_path, destinationPath);
+
+    return result;
+}
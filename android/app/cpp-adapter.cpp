@@ -1,6 +1,39 @@
 #include <jni.h>
 #include "react-native-bs-diff-patch.h"
 
+// Forwards the native patch progress to a PatchProgressCallback, on the thread that called into JNI.
+struct JavaProgressCallback {
+    JNIEnv *env;
+    jobject callback;
+    jmethodID onProgress;
+};
+
+static bool reportJavaProgress(void *context, int64_t written, int64_t total) {
+    JavaProgressCallback *progress = static_cast<JavaProgressCallback *>(context);
+    jboolean proceed = progress->env->CallBooleanMethod(progress->callback, progress->onProgress,
+                                                        static_cast<jlong>(written), static_cast<jlong>(total));
+    // An exception thrown by the callback cancels the patch and is rethrown once back in Java.
+    return !progress->env->ExceptionCheck() && proceed;
+}
+
+static bool initJavaProgressCallback(JNIEnv *env, jobject callback, JavaProgressCallback *progress) {
+    if (callback == nullptr) {
+        return false;
+    }
+    jclass callbackClass = env->GetObjectClass(callback);
+    progress->env = env;
+    progress->callback = callback;
+    progress->onProgress = env->GetMethodID(callbackClass, "onProgress", "(JJ)Z");
+    env->DeleteLocalRef(callbackClass);
+    if (progress->onProgress == nullptr) {
+        // The method was renamed by a shrinker without the consumer rules. Patch without
+        // progress instead of returning to Java with the NoSuchMethodError pending.
+        env->ExceptionClear();
+        return false;
+    }
+    return true;
+}
+
 extern "C"
 JNIEXPORT jint JNICALL
 Java_com_microsoft_codepush_react_BsDiffPatchLoader_bsDiffFile(JNIEnv *env,
@@ -35,4 +68,57 @@ Java_com_microsoft_codepush_react_BsDiffPatchLoader_bsPatchFile(JNIEnv *env, jcl
     env->ReleaseStringUTFChars(patch_file, patchFile);
 
     return result;
-}
\ No newline at end of file
+}
+
+extern "C"
+JNIEXPORT jint JNICALL
+Java_com_microsoft_codepush_react_BsDiffPatchLoader_bsPatchFileStreaming(JNIEnv *env, jclass clazz,
+                                                                         jstring old_file, jstring new_file,
+                                                                         jstring patch_file, jint window_size,
+                                                                         jlongArray rss_increase_kb, jobject callback) {
+    const char *oldFile = env->GetStringUTFChars(old_file, 0);
+    const char *newFile = env->GetStringUTFChars(new_file, 0);
+    const char *patchFile = env->GetStringUTFChars(patch_file, 0);
+
+    long rssIncreaseKb = -1;
+    JavaProgressCallback progress;
+    bool hasProgress = initJavaProgressCallback(env, callback, &progress);
+    int result = bsdiffpatch::patchFileStreaming(oldFile, newFile, patchFile, window_size, &rssIncreaseKb,
+                                                 hasProgress ? reportJavaProgress : nullptr, &progress);
+
+    env->ReleaseStringUTFChars(old_file, oldFile);
+    env->ReleaseStringUTFChars(new_file, newFile);
+    env->ReleaseStringUTFChars(patch_file, patchFile);
+
+    // The array can't be touched while an exception thrown by the callback is pending.
+    if (env->ExceptionCheck()) {
+        return result;
+    }
+    if (rss_increase_kb != nullptr && env->GetArrayLength(rss_increase_kb) > 0) {
+        jlong value = rssIncreaseKb;
+        env->SetLongArrayRegion(rss_increase_kb, 0, 1, &value);
+    }
+    return result;
+}
+
+extern "C"
+JNIEXPORT jint JNICALL
+Java_com_microsoft_codepush_react_BsDiffPatchLoader_bsPatchFileMultiBlock(JNIEnv *env, jclass clazz,
+                                                                          jstring old_file, jstring new_file,
+                                                                          jstring patch_file, jint thread_count,
+                                                                          jobject callback) {
+    const char *oldFile = env->GetStringUTFChars(old_file, 0);
+    const char *newFile = env->GetStringUTFChars(new_file, 0);
+    const char *patchFile = env->GetStringUTFChars(patch_file, 0);
+
+    JavaProgressCallback progress;
+    bool hasProgress = initJavaProgressCallback(env, callback, &progress);
+    int result = bsdiffpatch::patchFileMultiBlock(oldFile, newFile, patchFile, thread_count,
+                                                  hasProgress ? reportJavaProgress : nullptr, &progress);
+
+    env->ReleaseStringUTFChars(old_file, oldFile);
+    env->ReleaseStringUTFChars(new_file, newFile);
+    env->ReleaseStringUTFChars(patch_file, patchFile);
+
+    return result;
+}
@@ -23,3 +23,11 @@
 
 # Can't find referenced class org.bouncycastle.**
 -dontwarn com.nimbusds.jose.**
+
+# Called by name from the native patcher to report progress.
+-keepclassmembers class * implements com.microsoft.codepush.react.PatchProgressCallback {
+    boolean onProgress(long, long);
+}
+
+# zstd-jni is compileOnly, apps that publish Zstandard compressed updates add it themselves.
+-dontwarn com.github.luben.zstd.**
@@ -1,11 +1,18 @@
 package com.microsoft.codepush.react;
 
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
 /**
  * Utility class to handle native library loading for BsDiffPatch
  */
 public class BsDiffPatchLoader {
     private static volatile BsDiffPatchLoader instance;
+    private static volatile Boolean sAvailable;
     private static final String LIBRARY_NAME = "react-native-bs-diff-patch";
+    private static final byte[] MULTI_BLOCK_MAGIC = {'C', 'O', 'D', 'E', 'P', 'U', 'S', 'H', '/', 'M', 'B', 'D', 'I', 'F', 'F', '1'};
 
 
     private BsDiffPatchLoader() {
@@ -23,9 +30,70 @@ public class BsDiffPatchLoader {
         return instance;
     }
 
+    /**
+     * Loads the native library if it isn't yet, and returns whether it could be loaded.
+     */
+    public static boolean isAvailable() {
+        if (sAvailable == null) {
+            try {
+                getInstance();
+                sAvailable = true;
+            } catch (UnsatisfiedLinkError e) {
+                CodePushUtils.log("Unable to load " + LIBRARY_NAME + ": " + e.getMessage());
+                sAvailable = false;
+            }
+        }
+        return sAvailable;
+    }
+
     public static int nativeBsPatchFile(String oldFile, String newFile, String patchFile) {
        return getInstance().bsPatchFile(oldFile, newFile, patchFile);
     }
 
+    /**
+     * Applies the patch through a window of windowSize bytes instead of loading both files in
+     * memory. Returns 0 on success and stores in rssIncreaseKb[0] how far the RSS of the process
+     * rose while patching, in KB, or -1 if it could not be read.
+     * callback, if not null, is called after every window written.
+     */
+    public static int nativeBsPatchFileStreaming(String oldFile, String newFile, String patchFile, int windowSize, long[] rssIncreaseKb,
+                                                 PatchProgressCallback callback) {
+        return getInstance().bsPatchFileStreaming(oldFile, newFile, patchFile, windowSize, rssIncreaseKb, callback);
+    }
+
+    /**
+     * Returns whether patchFile is a multi-block patch, whose blocks can be applied in parallel
+     * by {@link #nativeBsPatchFileMultiBlock}.
+     */
+    public static boolean isMultiBlockPatch(String patchFile) {
+        DataInputStream input = null;
+        try {
+            input = new DataInputStream(new FileInputStream(patchFile));
+            byte[] magic = new byte[MULTI_BLOCK_MAGIC.length];
+            input.readFully(magic);
+            return Arrays.equals(magic, MULTI_BLOCK_MAGIC);
+        } catch (IOException e) {
+            return false;
+        } finally {
+            CodePushBsPatch.closeQuietly(input);
+        }
+    }
+
+    /**
+     * Applies a multi-block patch on up to threadCount threads, checking the CRC-32 of every
+     * block. Returns 0 on success. callback, if not null, is called on the calling thread after
+     * each block it patched.
+     */
+    public static int nativeBsPatchFileMultiBlock(String oldFile, String newFile, String patchFile, int threadCount,
+                                                  PatchProgressCallback callback) {
+        return getInstance().bsPatchFileMultiBlock(oldFile, newFile, patchFile, threadCount, callback);
+    }
+
     private native int bsPatchFile(String oldFile, String newFile, String patchFile);
-}
\ No newline at end of file
+
+    private native int bsPatchFileStreaming(String oldFile, String newFile, String patchFile, int windowSize, long[] rssIncreaseKb,
+                                            PatchProgressCallback callback);
+
+    private native int bsPatchFileMultiBlock(String oldFile, String newFile, String patchFile, int threadCount,
+                                             PatchProgressCallback callback);
+}
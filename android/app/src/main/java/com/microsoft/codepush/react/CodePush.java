@@ -27,6 +27,20 @@ public class CodePush implements ReactPackage {
     private static boolean sIsRunningBinaryVersion = false;
     private static boolean sNeedToReportRollback = false;
     private static boolean sTestConfigurationFlag = false;
+    private static boolean sResumableDownloadsEnabled = false;
+    private static int sDownloadConnectionCount = 1;
+    private static boolean sStreamingUnzipEnabled = false;
+    private static boolean sContentStoreEnabled = false;
+    private static boolean sStrictHashVerificationEnabled = false;
+    private static long sDownloadProgressInterval = 100;
+    private static long sDownloadProgressByteThreshold = 0;
+    private static CodePushHttpTransport sHttpTransport;
+    private static boolean sCompressedDownloadsEnabled = false;
+    private static int sUnzipThreadCount = 1;
+    private static boolean sRestoreFileTimesEnabled = true;
+    private static byte[] sZstdDictionary;
+    private static boolean sStreamingPatchEnabled = false;
+    private static boolean sJavaPatchEngineEnabled = false;
     private static String sAppVersion = null;
 
     private boolean mDidUpdate = false;
@@ -385,6 +399,178 @@ public class CodePush implements ReactPackage {
         sAppVersion = appVersionOverride;
     }
 
+    /**
+     * Keeps a checkpoint of partially downloaded packages so that an interrupted
+     * download is resumed with an HTTP Range request instead of starting over.
+     * Requires the update server to send an ETag or Last-Modified header.
+     */
+    public static void setResumableDownloadsEnabled(boolean resumableDownloadsEnabled) {
+        sResumableDownloadsEnabled = resumableDownloadsEnabled;
+    }
+
+    static boolean isResumableDownloadsEnabled() {
+        return sResumableDownloadsEnabled;
+    }
+
+    /**
+     * Downloads packages over up to the given number of parallel connections, each fetching
+     * its own byte range. Values of 1 or less keep the single connection download.
+     */
+    public static void setDownloadConnectionCount(int downloadConnectionCount) {
+        sDownloadConnectionCount = downloadConnectionCount;
+    }
+
+    static int getDownloadConnectionCount() {
+        return sDownloadConnectionCount;
+    }
+
+    /**
+     * Extracts zip packages while they are being downloaded instead of saving them to
+     * download.zip first. Takes precedence over resumable and multi-connection downloads.
+     */
+    public static void setStreamingUnzipEnabled(boolean streamingUnzipEnabled) {
+        sStreamingUnzipEnabled = streamingUnzipEnabled;
+    }
+
+    static boolean isStreamingUnzipEnabled() {
+        return sStreamingUnzipEnabled;
+    }
+
+    /**
+     * Stores update files once by their SHA-256 and hard links them into the package folders,
+     * so that files shared by the current and previous package take up disk space only once.
+     */
+    public static void setContentStoreEnabled(boolean contentStoreEnabled) {
+        sContentStoreEnabled = contentStoreEnabled;
+    }
+
+    static boolean isContentStoreEnabled() {
+        return sContentStoreEnabled;
+    }
+
+    /**
+     * Rehashes every file of an update during verification, including the files that were
+     * carried over unchanged from the current package and whose hashes are cached.
+     */
+    public static void setStrictHashVerificationEnabled(boolean strictHashVerificationEnabled) {
+        sStrictHashVerificationEnabled = strictHashVerificationEnabled;
+    }
+
+    static boolean isStrictHashVerificationEnabled() {
+        return sStrictHashVerificationEnabled;
+    }
+
+    /**
+     * Sets the minimum time between two download progress events sent to JS.
+     * 0 sends an event for every chunk unless a byte threshold is set.
+     */
+    public static void setDownloadProgressInterval(long downloadProgressIntervalMillis) {
+        sDownloadProgressInterval = downloadProgressIntervalMillis;
+    }
+
+    static long getDownloadProgressInterval() {
+        return sDownloadProgressInterval;
+    }
+
+    /**
+     * Sends a download progress event once this many bytes arrived since the previous one,
+     * even if the progress interval has not elapsed yet. 0 disables the threshold.
+     */
+    public static void setDownloadProgressByteThreshold(long downloadProgressByteThreshold) {
+        sDownloadProgressByteThreshold = downloadProgressByteThreshold;
+    }
+
+    static long getDownloadProgressByteThreshold() {
+        return sDownloadProgressByteThreshold;
+    }
+
+    /**
+     * Sets the transport used to download updates, e.g. a {@link CodePushOkHttpTransport}
+     * around the app's own OkHttpClient so that connections are shared with the rest of the app.
+     */
+    public static synchronized void setHttpTransport(CodePushHttpTransport httpTransport) {
+        sHttpTransport = httpTransport;
+    }
+
+    /**
+     * Lets the server send updates with gzip or Brotli transfer encoding, which is decoded while
+     * the update is written to disk. Not used for resumable or multi-connection downloads.
+     */
+    public static void setCompressedDownloadsEnabled(boolean compressedDownloadsEnabled) {
+        sCompressedDownloadsEnabled = compressedDownloadsEnabled;
+    }
+
+    static boolean isCompressedDownloadsEnabled() {
+        return sCompressedDownloadsEnabled;
+    }
+
+    /**
+     * Extracts downloaded update packages on up to this many threads, reading the entries
+     * through the zip central directory. Not used for streamed packages.
+     */
+    public static void setUnzipThreadCount(int unzipThreadCount) {
+        sUnzipThreadCount = unzipThreadCount;
+    }
+
+    static int getUnzipThreadCount() {
+        return sUnzipThreadCount;
+    }
+
+    /**
+     * Sets the modification time of files extracted on several threads to the one stored in
+     * the package. Disabling it saves a system call per file.
+     */
+    public static void setRestoreFileTimesEnabled(boolean restoreFileTimesEnabled) {
+        sRestoreFileTimesEnabled = restoreFileTimesEnabled;
+    }
+
+    static boolean isRestoreFileTimesEnabled() {
+        return sRestoreFileTimesEnabled;
+    }
+
+    /**
+     * Sets the dictionary that the Zstandard compressed files of updates were compressed with,
+     * e.g. read from the app assets. Decoding .zst files requires com.github.luben:zstd-jni.
+     */
+    public static synchronized void setZstdDictionary(byte[] zstdDictionary) {
+        sZstdDictionary = zstdDictionary;
+    }
+
+    static synchronized byte[] getZstdDictionary() {
+        return sZstdDictionary;
+    }
+
+    /**
+     * Applies bundle patches with the old bundle memory mapped and the new one written through
+     * a fixed size window, instead of holding both bundles in memory.
+     */
+    public static void setStreamingPatchEnabled(boolean streamingPatchEnabled) {
+        sStreamingPatchEnabled = streamingPatchEnabled;
+    }
+
+    static boolean isStreamingPatchEnabled() {
+        return sStreamingPatchEnabled;
+    }
+
+    /**
+     * Applies patches with the Java bspatch engine instead of the native library, which is then
+     * never loaded. The Java engine is also used when the native library can't be loaded.
+     */
+    public static void setJavaPatchEngineEnabled(boolean javaPatchEngineEnabled) {
+        sJavaPatchEngineEnabled = javaPatchEngineEnabled;
+    }
+
+    static boolean isJavaPatchEngineEnabled() {
+        return sJavaPatchEngineEnabled;
+    }
+
+    static synchronized CodePushHttpTransport getHttpTransport() {
+        if (sHttpTransport == null) {
+            sHttpTransport = new CodePushOkHttpTransport();
+        }
+        return sHttpTransport;
+    }
+
     private void rollbackPackage() {
         JSONObject failedPackage = mUpdateManager.getCurrentPackage();
         CodePushUtils.log("failedPackage in Rollback package ::", failedPackage);
@@ -0,0 +1,188 @@
+package com.microsoft.codepush.react;
+
+import org.brotli.dec.BrotliInputStream;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Decodes Brotli data with the native decoder when the app was built with it (see the
+ * codePushBrotliSourceDir Gradle property), and with org.brotli:dec otherwise.
+ */
+class CodePushBrotliDecoder {
+    private static final String LIBRARY_NAME = "codepush-brotli";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // Results of nativeDecompress, as in BrotliDecoderResult.
+    private static final int RESULT_ERROR = 0;
+    private static final int RESULT_SUCCESS = 1;
+    private static final int RESULT_NEEDS_MORE_INPUT = 2;
+
+    // Results of nativeDecodeFile.
+    private static final int DECODE_FILE_OK = 0;
+    private static final int DECODE_FILE_IO_ERROR = 1;
+
+    private static final boolean sNativeAvailable = loadNativeLibrary();
+
+    private CodePushBrotliDecoder() {
+    }
+
+    public static boolean isNativeAvailable() {
+        return sNativeAvailable;
+    }
+
+    /**
+     * Returns a stream of the data decoded from source. Closing it closes source.
+     */
+    public static InputStream newInputStream(InputStream source) throws IOException {
+        return sNativeAvailable ? new NativeInputStream(source) : new BrotliInputStream(source, BUFFER_SIZE);
+    }
+
+    /**
+     * Decodes the Brotli file source into destination.
+     */
+    public static void decodeFile(File source, File destination) throws IOException {
+        if (sNativeAvailable) {
+            int result = nativeDecodeFile(source.getAbsolutePath(), destination.getAbsolutePath());
+            if (result == DECODE_FILE_IO_ERROR) {
+                throw new IOException("Unable to decode " + source.getName() + " into " + destination.getName());
+            } else if (result != DECODE_FILE_OK) {
+                throw new IOException("Brotli stream decoding failed");
+            }
+            return;
+        }
+
+        InputStream input = null;
+        FileOutputStream output = null;
+        try {
+            input = newInputStream(new FileInputStream(source));
+            output = new FileOutputStream(destination);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int numBytesRead;
+            while ((numBytesRead = input.read(buffer)) != -1) {
+                output.write(buffer, 0, numBytesRead);
+            }
+        } finally {
+            if (input != null) input.close();
+            if (output != null) output.close();
+        }
+    }
+
+    private static boolean loadNativeLibrary() {
+        try {
+            System.loadLibrary(LIBRARY_NAME);
+            CodePushUtils.log("Using the native Brotli decoder.");
+            return true;
+        } catch (UnsatisfiedLinkError e) {
+            // The library is optional, org.brotli:dec is used instead.
+            return false;
+        }
+    }
+
+    private static native long nativeCreate();
+
+    private static native void nativeDestroy(long handle);
+
+    private static native int nativeDecompress(long handle, ByteBuffer input, int inputOffset, int inputLength,
+                                               ByteBuffer output, int outputLength, int[] counts);
+
+    private static native int nativeDecodeFile(String sourcePath, String destinationPath);
+
+    /**
+     * Feeds source to the native decoder through direct buffers, so that the decoder state and
+     * its window stay off the Java heap.
+     */
+    private static class NativeInputStream extends InputStream {
+        private final InputStream mSource;
+        private final FileChannel mSourceChannel;
+        private final ByteBuffer mInput = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        private final ByteBuffer mOutput = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        private final byte[] mTransferBuffer;
+        private final int[] mCounts = new int[2];
+        private long mHandle;
+        private int mResult = RESULT_NEEDS_MORE_INPUT;
+
+        NativeInputStream(InputStream source) throws IOException {
+            mSource = source;
+            // Files can be read straight into the direct buffer, other streams need a heap copy.
+            mSourceChannel = source instanceof FileInputStream ? ((FileInputStream) source).getChannel() : null;
+            mTransferBuffer = mSourceChannel == null ? new byte[BUFFER_SIZE] : null;
+            mHandle = nativeCreate();
+            if (mHandle == 0) {
+                throw new IOException("Unable to create the Brotli decoder");
+            }
+            mInput.limit(0);
+            mOutput.limit(0);
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+
+            while (!mOutput.hasRemaining()) {
+                if (mResult == RESULT_SUCCESS) {
+                    return -1;
+                }
+                decode();
+            }
+
+            int count = Math.min(len, mOutput.remaining());
+            mOutput.get(b, off, count);
+            return count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (mHandle != 0) {
+                nativeDestroy(mHandle);
+                mHandle = 0;
+            }
+            mSource.close();
+        }
+
+        private void decode() throws IOException {
+            if (mHandle == 0) {
+                throw new IOException("Stream closed");
+            }
+
+            if (mResult == RESULT_NEEDS_MORE_INPUT && !mInput.hasRemaining() && !fillInput()) {
+                throw new IOException("Unexpected end of Brotli stream");
+            }
+
+            mResult = nativeDecompress(mHandle, mInput, mInput.position(), mInput.remaining(), mOutput, mOutput.capacity(), mCounts);
+            if (mResult == RESULT_ERROR) {
+                throw new IOException("Brotli stream decoding failed");
+            }
+
+            mInput.position(mInput.position() + mCounts[0]);
+            mOutput.limit(mCounts[1]);
+            mOutput.position(0);
+        }
+
+        private boolean fillInput() throws IOException {
+            mInput.clear();
+            int numBytesRead;
+            if (mSourceChannel != null) {
+                numBytesRead = mSourceChannel.read(mInput);
+            } else {
+                numBytesRead = mSource.read(mTransferBuffer, 0, mInput.remaining());
+                if (numBytesRead > 0) mInput.put(mTransferBuffer, 0, numBytesRead);
+            }
+            mInput.flip();
+            return numBytesRead > 0;
+        }
+    }
+}
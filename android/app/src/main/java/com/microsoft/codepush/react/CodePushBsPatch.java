@@ -0,0 +1,222 @@
+package com.microsoft.codepush.react;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Java implementation of the streaming bspatch in cpp/bspatch.c, for when the native library
+ * is not wanted or can't be loaded. It reads the same ENDSLEY/BSDIFF43 patches, maps the old
+ * file and writes the new file through a window of a fixed size. It has no Android dependencies
+ * so that it can be run and compared with the native engine on a desktop JVM.
+ */
+class CodePushBsPatch {
+    // Same results as the BSPATCH_* codes of the native engine.
+    static final int BSPATCH_OK = 0;
+    static final int BSPATCH_ERROR_PATCH_FILE = 1;
+    static final int BSPATCH_ERROR_CORRUPT_PATCH = 2;
+    static final int BSPATCH_ERROR_OLD_FILE = 3;
+    static final int BSPATCH_ERROR_NEW_FILE = 4;
+    static final int BSPATCH_ERROR_CANCELLED = 7;
+
+    private static final byte[] MAGIC = {'E', 'N', 'D', 'S', 'L', 'E', 'Y', '/', 'B', 'S', 'D', 'I', 'F', 'F', '4', '3'};
+    private static final int HEADER_SIZE = 24;
+    private static final int PATCH_BUFFER_SIZE = 64 * 1024;
+
+    private CodePushBsPatch() {
+    }
+
+    /**
+     * Applies patchFile to oldFile and writes the result to newFile, holding at most
+     * windowSize bytes of the new file in memory. Returns BSPATCH_OK or one of the errors.
+     * callback, if not null, is called after every window written.
+     */
+    public static int bsPatchFile(String oldFile, String newFile, String patchFile, int windowSize, PatchProgressCallback callback) {
+        DataInputStream patch = null;
+        RandomAccessFile old = null;
+        FileOutputStream output = null;
+        try {
+            try {
+                patch = new DataInputStream(new BufferedInputStream(new FileInputStream(patchFile), PATCH_BUFFER_SIZE));
+            } catch (IOException e) {
+                throw new PatchException(BSPATCH_ERROR_PATCH_FILE);
+            }
+
+            byte[] header = new byte[HEADER_SIZE];
+            readPatch(patch, header, 0, HEADER_SIZE);
+            long newSize = offtin(header, 16);
+            if (!Arrays.equals(Arrays.copyOf(header, MAGIC.length), MAGIC) || newSize < 0) {
+                throw new PatchException(BSPATCH_ERROR_CORRUPT_PATCH);
+            }
+
+            MappedByteBuffer oldData = null;
+            long oldSize;
+            try {
+                old = new RandomAccessFile(oldFile, "r");
+                oldSize = old.length();
+                if (oldSize > Integer.MAX_VALUE) {
+                    throw new PatchException(BSPATCH_ERROR_OLD_FILE);
+                }
+                if (oldSize > 0) {
+                    oldData = old.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, oldSize);
+                }
+            } catch (IOException e) {
+                throw new PatchException(BSPATCH_ERROR_OLD_FILE);
+            }
+
+            try {
+                output = new FileOutputStream(newFile);
+            } catch (IOException e) {
+                throw new PatchException(BSPATCH_ERROR_NEW_FILE);
+            }
+
+            byte[] window = new byte[windowSize > 0 ? windowSize : CodePushConstants.PATCH_WINDOW_SIZE];
+            patchStream(oldData, patch, newSize, output, window, new Progress(callback, newSize));
+            try {
+                output.close();
+            } catch (IOException e) {
+                throw new PatchException(BSPATCH_ERROR_NEW_FILE);
+            } finally {
+                output = null;
+            }
+            return BSPATCH_OK;
+        } catch (PatchException e) {
+            return e.mResult;
+        } finally {
+            closeQuietly(patch);
+            closeQuietly(old);
+            closeQuietly(output);
+        }
+    }
+
+    /**
+     * Writes newSize bytes to output, made of the control, diff and extra data read from patch
+     * and of old, which may be null if empty. At most window.length bytes are held at a time.
+     */
+    static void patchStream(ByteBuffer old, DataInputStream patch, long newSize, OutputStream output, byte[] window,
+                            Progress progress) throws PatchException {
+        long oldSize = old != null ? old.limit() : 0;
+        byte[] control = new byte[24];
+        int windowFill = 0;
+        long oldPos = 0;
+        long newPos = 0;
+        while (newPos < newSize) {
+            readPatch(patch, control, 0, control.length);
+            long diffLength = offtin(control, 0);
+            long extraLength = offtin(control, 8);
+            long seek = offtin(control, 16);
+            if (diffLength < 0 || diffLength > Integer.MAX_VALUE
+                    || extraLength < 0 || extraLength > Integer.MAX_VALUE
+                    || newPos + diffLength + extraLength > newSize) {
+                throw new PatchException(BSPATCH_ERROR_CORRUPT_PATCH);
+            }
+
+            // Diff string plus old data, then the extra string, one window at a time.
+            for (long remaining = diffLength + extraLength; remaining > 0; ) {
+                int length = (int) Math.min(remaining, window.length - windowFill);
+                readPatch(patch, window, windowFill, length);
+
+                if (remaining > extraLength) {
+                    int diffChunk = (int) Math.min(remaining - extraLength, length);
+                    long start = Math.max(oldPos, 0);
+                    long end = Math.min(oldPos + diffChunk, oldSize);
+                    for (long i = start; i < end; i++) {
+                        window[windowFill + (int) (i - oldPos)] += old.get((int) i);
+                    }
+                    oldPos += diffChunk;
+                }
+
+                windowFill += length;
+                newPos += length;
+                remaining -= length;
+                if (windowFill == window.length) {
+                    writeWindow(output, window, windowFill);
+                    progress.add(windowFill);
+                    windowFill = 0;
+                }
+            }
+
+            oldPos += seek;
+        }
+
+        writeWindow(output, window, windowFill);
+        progress.add(windowFill);
+    }
+
+    static long offtin(byte[] buffer, int offset) {
+        long y = buffer[offset + 7] & 0x7F;
+        for (int i = 6; i >= 0; i--) {
+            y = (y << 8) | (buffer[offset + i] & 0xFF);
+        }
+        return (buffer[offset + 7] & 0x80) != 0 ? -y : y;
+    }
+
+    static void readPatch(DataInputStream patch, byte[] buffer, int offset, int length) throws PatchException {
+        try {
+            patch.readFully(buffer, offset, length);
+        } catch (EOFException e) {
+            throw new PatchException(BSPATCH_ERROR_CORRUPT_PATCH);
+        } catch (IOException e) {
+            throw new PatchException(BSPATCH_ERROR_PATCH_FILE);
+        }
+    }
+
+    private static void writeWindow(OutputStream output, byte[] window, int length) throws PatchException {
+        try {
+            output.write(window, 0, length);
+        } catch (IOException e) {
+            throw new PatchException(BSPATCH_ERROR_NEW_FILE);
+        }
+    }
+
+    static void closeQuietly(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // Nothing left to do with it.
+        }
+    }
+
+    /**
+     * Reports the bytes written to a callback, which may be null, across all the calls to
+     * patchStream that make up one file.
+     */
+    static class Progress {
+        private final PatchProgressCallback mCallback;
+        private final long mTotalBytes;
+        private long mWrittenBytes;
+
+        Progress(PatchProgressCallback callback, long totalBytes) {
+            mCallback = callback;
+            mTotalBytes = totalBytes;
+        }
+
+        void add(int writtenBytes) throws PatchException {
+            mWrittenBytes += writtenBytes;
+            if (mCallback != null && !mCallback.onProgress(mWrittenBytes, mTotalBytes)) {
+                throw new PatchException(BSPATCH_ERROR_CANCELLED);
+            }
+        }
+    }
+
+    static class PatchException extends Exception {
+        final int mResult;
+
+        PatchException(int result) {
+            mResult = result;
+        }
+    }
+}
@@ -1,14 +1,32 @@
 package com.microsoft.codepush.react;
 
 public enum CodePushCompressionMode {
-    DEFAULT(0),
-    BROTLI(1);
+    DEFAULT(0, ""),
+    BROTLI(1, ".br"),
+    ZSTD(2, ".zst");
 
     private final int value;
-    CodePushCompressionMode(int value) {
+    private final String fileExtension;
+    CodePushCompressionMode(int value, String fileExtension) {
         this.value = value;
+        this.fileExtension = fileExtension;
     }
     public int getValue() {
         return this.value;
     }
+    public String getFileExtension() {
+        return this.fileExtension;
+    }
+
+    /**
+     * Returns how a package file is compressed, from its extension.
+     */
+    public static CodePushCompressionMode fromFileName(String fileName) {
+        for (CodePushCompressionMode mode : values()) {
+            if (mode != DEFAULT && fileName.endsWith(mode.fileExtension)) {
+                return mode;
+            }
+        }
+        return DEFAULT;
+    }
 }
@@ -8,10 +8,16 @@ public class CodePushConstants {
     public static final String CODE_PUSH_OLD_HASH_FILE_NAME = "CodePushHash.json";
     public static final String CODE_PUSH_PREFERENCES = "CodePush";
     public static final String CURRENT_PACKAGE_KEY = "currentPackage";
+    public static final String DECOMPRESSION_THREAD_COUNT_KEY = "decompressionThreadCount";
     public static final String DEFAULT_JS_BUNDLE_NAME = "index.android.bundle";
     public static final String DIFF_MANIFEST_FILE_NAME = "hotcodepush.json";
+    public static final String PATCH_MANIFEST_FILE_NAME = "hotcodepush.patches.json";
     public static final int DOWNLOAD_BUFFER_SIZE = 1024 * 256;
     public static final String DOWNLOAD_FILE_NAME = "download.zip";
+    public static final String DOWNLOAD_CHECKPOINT_FILE_NAME = "download.checkpoint.json";
+    public static final int DOWNLOAD_CHECKPOINT_INTERVAL = 1024 * 1024;
+    public static final int DOWNLOAD_MAX_RESUME_ATTEMPTS = 3;
+    public static final int DOWNLOAD_RESUME_BACKOFF_MILLIS = 1000;
     public static final String DOWNLOAD_PROGRESS_EVENT_NAME = "CodePushDownloadProgress";
     public static final String DOWNLOAD_STATUS_EVENT_NAME = "CodePushDownloadStatus";
     public static final String DOWNLOAD_URL_KEY = "downloadUrl";
@@ -26,7 +32,8 @@ public class CodePushConstants {
     public static final String RELATIVE_BUNDLE_PATH_KEY = "bundlePath";
     public static final String STATUS_FILE = "codepush.json";
     public static final String UNZIPPED_FOLDER_NAME = "unzipped";
-    public static final String DECOMPRESSED_FOLDER_NAME = "decompressed";
+    public static final String CONTENT_STORE_FOLDER_NAME = "objects";
+    public static final String HASH_CACHE_FILE = "codepush.hashcache";
     public static final String CODE_PUSH_APK_BUILD_TIME_KEY = "CODE_PUSH_APK_BUILD_TIME";
     public static final String BUNDLE_JWT_FILE = ".codepushrelease";
     public static final String LATEST_ROLLBACK_INFO_KEY = "LATEST_ROLLBACK_INFO";
@@ -35,9 +42,14 @@ public class CodePushConstants {
     public static final String LATEST_ROLLBACK_COUNT_KEY = "count";
     public static final String CLIENT_UNIQUE_ID_KEY = "clientUniqueId";
     public static final String PATCH_BUNDLE_FILE_NAME = "bundle.patch";
+    public static final int PATCH_WINDOW_SIZE = 1024 * 1024;
     public static final String BINARY_BUNDLE_DIR = "binaryBundle";
+    public static final String BINARY_BUNDLE_MARKER_FILE_NAME = "binaryBundle.json";
     public static final String IS_BUNDLE_PATCHING_ENABLED = "isBundlePatchingEnabled";
+    public static final String PATCH_BASE_PACKAGE_HASH_KEY = "patchBasePackageHash";
+    public static final String BUNDLE_HASH_KEY = "bundleHash";
     public static final String PATCH_APPLIED_SUCCESS = "PATCH_APPLIED_SUCCESS";
+    public static final String PATCH_PROGRESS = "PATCH_PROGRESS";
     public static final String DOWNLOAD_REQUEST_SUCCESS = "DOWNLOAD_REQUEST_SUCCESS";
     public static final String UNZIPPED_SUCCESS = "UNZIPPED_SUCCESS";
     public static final String DECOMPRESSED_SUCCESS = "DECOMPRESSED_SUCCESS";
@@ -0,0 +1,98 @@
+package com.microsoft.codepush.react;
+
+import android.system.ErrnoException;
+import android.system.Os;
+
+import java.io.File;
+import java.util.Map;
+
+/**
+ * Store of update files keyed by their SHA-256, shared by the installed packages through hard
+ * links. An object is garbage once no package folder links to it anymore.
+ */
+class CodePushContentStore {
+    private final File mStoreFolder;
+
+    public CodePushContentStore(String storePath) {
+        mStoreFolder = new File(storePath);
+    }
+
+    /**
+     * Moves the files of a package into the store. Files whose contents are already stored are
+     * replaced with a link to the stored object, the others become new objects. Files without a
+     * recorded hash, and files that can't be linked, stay private to the package.
+     */
+    public void addPackageFiles(String packageFolderPath, Map<String, String> fileHashes) {
+        int linkedFileCount = 0;
+        for (Map.Entry<String, String> fileHash : fileHashes.entrySet()) {
+            File file = new File(packageFolderPath, fileHash.getKey());
+            if (!file.isFile()) {
+                continue;
+            }
+
+            File object = getObjectFile(fileHash.getValue());
+            try {
+                if (object.exists()) {
+                    // Don't trust an object that was truncated or modified behind our back.
+                    if (object.length() != file.length()) {
+                        CodePushUtils.log("Ignoring stored object " + object.getName() + " with unexpected size.");
+                        continue;
+                    }
+                    replaceWithLink(object, file);
+                } else {
+                    object.getParentFile().mkdirs();
+                    Os.link(file.getAbsolutePath(), object.getAbsolutePath());
+                }
+                linkedFileCount++;
+            } catch (ErrnoException e) {
+                CodePushUtils.log("Keeping a private copy of " + fileHash.getKey() + ": " + e.getMessage());
+            }
+        }
+        CodePushUtils.log("Linked " + linkedFileCount + " of " + fileHashes.size() + " package files to the content store.");
+    }
+
+    /**
+     * Deletes the objects that are no longer linked from any package folder.
+     */
+    public void collectGarbage() {
+        if (!mStoreFolder.exists()) {
+            return;
+        }
+
+        int deletedObjectCount = 0;
+        File[] prefixFolders = mStoreFolder.listFiles();
+        if (prefixFolders == null) return;
+        for (File prefixFolder : prefixFolders) {
+            File[] objects = prefixFolder.listFiles();
+            if (objects == null) continue;
+            for (File object : objects) {
+                try {
+                    if (Os.stat(object.getAbsolutePath()).st_nlink <= 1 && object.delete()) {
+                        deletedObjectCount++;
+                    }
+                } catch (ErrnoException e) {
+                    CodePushUtils.log("Unable to stat stored object " + object.getName() + ": " + e.getMessage());
+                }
+            }
+            prefixFolder.delete();
+        }
+        CodePushUtils.log("Deleted " + deletedObjectCount + " unreferenced objects from the content store.");
+    }
+
+    private File getObjectFile(String hash) {
+        return new File(new File(mStoreFolder, hash.substring(0, 2)), hash);
+    }
+
+    // Links through a temporary name so that the file is never missing if the link fails.
+    private static void replaceWithLink(File object, File file) throws ErrnoException {
+        File linkFile = new File(file.getParentFile(), file.getName() + ".link");
+        linkFile.delete();
+        Os.link(object.getAbsolutePath(), linkFile.getAbsolutePath());
+        try {
+            Os.rename(linkFile.getAbsolutePath(), file.getAbsolutePath());
+        } catch (ErrnoException e) {
+            linkFile.delete();
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.microsoft.codepush.react;
+
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Persisted state of a partially downloaded update package, used to resume
+ * the download with an HTTP Range request after a dropped connection or a
+ * process restart.
+ */
+class CodePushDownloadCheckpoint {
+    private static final String URL_KEY = "url";
+    private static final String ETAG_KEY = "etag";
+    private static final String LAST_MODIFIED_KEY = "lastModified";
+    private static final String BYTES_COMMITTED_KEY = "bytesCommitted";
+    private static final Pattern CONTENT_RANGE_PATTERN = Pattern.compile("bytes\\s+(\\d+)-(\\d+)/(\\d+|\\*)");
+
+    private final String mUrl;
+    private String mETag;
+    private String mLastModified;
+    private long mBytesCommitted;
+
+    public CodePushDownloadCheckpoint(String url) {
+        mUrl = url;
+    }
+
+    public static CodePushDownloadCheckpoint read(String checkpointFilePath) {
+        if (!FileUtils.fileAtPathExists(checkpointFilePath)) {
+            return null;
+        }
+
+        try {
+            JSONObject json = CodePushUtils.getJsonObjectFromFile(checkpointFilePath);
+            CodePushDownloadCheckpoint checkpoint = new CodePushDownloadCheckpoint(json.optString(URL_KEY, null));
+            checkpoint.mETag = json.optString(ETAG_KEY, null);
+            checkpoint.mLastModified = json.optString(LAST_MODIFIED_KEY, null);
+            checkpoint.mBytesCommitted = json.optLong(BYTES_COMMITTED_KEY, 0);
+            return checkpoint;
+        } catch (IOException | CodePushMalformedDataException e) {
+            // A torn checkpoint is not fatal, the download simply starts over.
+            CodePushUtils.log("Ignoring unreadable download checkpoint: " + e.getMessage());
+            return null;
+        }
+    }
+
+    public void write(String checkpointFilePath) throws IOException {
+        JSONObject json = new JSONObject();
+        CodePushUtils.setJSONValueForKey(json, URL_KEY, mUrl);
+        CodePushUtils.setJSONValueForKey(json, ETAG_KEY, mETag);
+        CodePushUtils.setJSONValueForKey(json, LAST_MODIFIED_KEY, mLastModified);
+        CodePushUtils.setJSONValueForKey(json, BYTES_COMMITTED_KEY, mBytesCommitted);
+        CodePushUtils.writeJsonToFile(json, checkpointFilePath);
+    }
+
+    /**
+     * A checkpoint can only be resumed when it belongs to the same URL, the server
+     * gave us a validator to send back in "If-Range", and the partial file on disk
+     * still holds at least the committed bytes.
+     */
+    public boolean canResume(String url, File downloadFile) {
+        return mUrl != null && mUrl.equals(url)
+                && getValidator() != null
+                && mBytesCommitted > 0
+                && downloadFile.exists()
+                && downloadFile.length() >= mBytesCommitted;
+    }
+
+    public String getValidator() {
+        return getIfRangeValidator(mETag, mLastModified);
+    }
+
+    public void setValidators(String eTag, String lastModified) {
+        mETag = eTag;
+        mLastModified = lastModified;
+    }
+
+    public long getBytesCommitted() {
+        return mBytesCommitted;
+    }
+
+    public void setBytesCommitted(long bytesCommitted) {
+        mBytesCommitted = bytesCommitted;
+    }
+
+    /**
+     * Returns the validator to send in "If-Range", or null if there is none. Weak ETags are not
+     * allowed there, so Last-Modified is used instead of them.
+     */
+    static String getIfRangeValidator(String eTag, String lastModified) {
+        if (eTag != null && !eTag.startsWith("W/")) {
+            return eTag;
+        }
+        return lastModified;
+    }
+
+    /**
+     * Parses a "Content-Range" header into its first byte, last byte and total length, the
+     * latter being -1 if unknown. Returns null if the header is missing or not a byte range.
+     */
+    static long[] parseContentRange(String contentRange) {
+        Matcher matcher = contentRange != null ? CONTENT_RANGE_PATTERN.matcher(contentRange.trim()) : null;
+        if (matcher == null || !matcher.matches()) {
+            return null;
+        }
+
+        try {
+            long totalBytes = "*".equals(matcher.group(3)) ? -1 : Long.parseLong(matcher.group(3));
+            return new long[]{Long.parseLong(matcher.group(1)), Long.parseLong(matcher.group(2)), totalBytes};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.microsoft.codepush.react;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Computes the "relativePath:sha256" entries of the update contents manifest for a folder,
+ * hashing the files on up to one thread per device core.
+ */
+class CodePushFolderHasher {
+    private final int mThreadCount;
+
+    public CodePushFolderHasher() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public CodePushFolderHasher(int threadCount) {
+        mThreadCount = Math.max(1, threadCount);
+    }
+
+    /**
+     * Returns the manifest entries for the files in folderPath, skipping the ignored paths.
+     * The entries are in no particular order.
+     */
+    public ArrayList<String> hashFolderContents(String folderPath) {
+        List<String> relativePaths = new ArrayList<>();
+        final List<File> files = new ArrayList<>();
+        collectFiles(new File(folderPath), "", relativePaths, files);
+
+        final String[] hashes = new String[files.size()];
+        try {
+            CodePushWorkerPool.run(CodePushWorkerPool.getThreadCount(mThreadCount, files.size()), files.size(), new CodePushWorkerPool.Task() {
+                @Override
+                public void run(int index) throws IOException {
+                    hashes[index] = hashFile(files.get(index));
+                }
+            });
+        } catch (IOException e) {
+            throw new CodePushUnknownException("Unable to compute hash of update contents.", e);
+        }
+
+        ArrayList<String> manifest = new ArrayList<>(files.size());
+        for (int i = 0; i < files.size(); i++) {
+            manifest.add(relativePaths.get(i) + ":" + hashes[i]);
+        }
+        return manifest;
+    }
+
+    /**
+     * Returns the paths of the files in folderPath that are part of the manifest, relative to it.
+     */
+    public static List<String> listFolderContents(String folderPath) {
+        List<String> relativePaths = new ArrayList<>();
+        collectFiles(new File(folderPath), "", relativePaths, new ArrayList<File>());
+        return relativePaths;
+    }
+
+    private static void collectFiles(File folder, String pathPrefix, List<String> relativePaths, List<File> files) {
+        for (File file : folder.listFiles()) {
+            String relativePath = (pathPrefix.isEmpty() ? "" : (pathPrefix + "/")) + file.getName();
+            if (CodePushUpdateUtils.isHashIgnored(relativePath)) {
+                continue;
+            }
+
+            if (file.isDirectory()) {
+                collectFiles(file, relativePath, relativePaths, files);
+            } else {
+                relativePaths.add(relativePath);
+                files.add(file);
+            }
+        }
+    }
+
+    private static String hashFile(File file) throws IOException {
+        MessageDigest digest = CodePushWorkerPool.getDigest();
+        byte[] buffer = CodePushWorkerPool.getBuffer();
+        FileInputStream input = new FileInputStream(file);
+        try {
+            int numBytesRead;
+            while ((numBytesRead = input.read(buffer)) != -1) {
+                digest.update(buffer, 0, numBytesRead);
+            }
+        } finally {
+            input.close();
+        }
+        return CodePushUpdateUtils.formatHash(digest.digest());
+    }
+}
@@ -0,0 +1,148 @@
+package com.microsoft.codepush.react;
+
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.StructStat;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Persisted SHA-256 of verified package files, so that files carried over unchanged into a new
+ * package don't need to be read again. An entry is only used while the file still has the inode,
+ * size and modification time it had when it was hashed.
+ *
+ * Each line of the index holds "inode size mtime hash path", with the path relative to the
+ * CodePush folder.
+ */
+class CodePushHashCache {
+    private final String mCodePushPath;
+    private final Map<String, Entry> mEntries = new HashMap<>();
+
+    private CodePushHashCache(String codePushPath) {
+        mCodePushPath = codePushPath;
+    }
+
+    public static CodePushHashCache load(String codePushPath) {
+        CodePushHashCache cache = new CodePushHashCache(codePushPath);
+        File indexFile = getIndexFile(codePushPath);
+        if (!indexFile.exists()) {
+            return cache;
+        }
+
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new FileReader(indexFile));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split(" ", 5);
+                if (fields.length != 5) {
+                    throw new IOException("Malformed hash cache entry: " + line);
+                }
+                cache.mEntries.put(fields[4], new Entry(Long.parseLong(fields[0]), Long.parseLong(fields[1]), Long.parseLong(fields[2]), fields[3]));
+            }
+        } catch (IOException | NumberFormatException e) {
+            // A damaged index only costs a rehash.
+            CodePushUtils.log("Ignoring unreadable hash cache: " + e.getMessage());
+            cache.mEntries.clear();
+        } finally {
+            try {
+                if (reader != null) reader.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return cache;
+    }
+
+    public static void invalidate(String codePushPath) {
+        FileUtils.deleteFileOrFolderSilently(getIndexFile(codePushPath));
+    }
+
+    /**
+     * Returns the cached hash of file, or null if it is unknown or the file changed since.
+     */
+    public String getHash(File file) {
+        String relativePath = FileUtils.getRelativePath(mCodePushPath, file);
+        Entry entry = relativePath != null ? mEntries.get(relativePath) : null;
+        if (entry == null) {
+            return null;
+        }
+
+        try {
+            StructStat stat = Os.stat(file.getAbsolutePath());
+            if (stat.st_ino == entry.mInode && stat.st_size == entry.mSize && file.lastModified() == entry.mModifiedTime) {
+                return entry.mHash;
+            }
+        } catch (ErrnoException e) {
+            CodePushUtils.log("Unable to stat " + file.getName() + ": " + e.getMessage());
+        }
+        return null;
+    }
+
+    public void put(File file, String hash) {
+        String relativePath = FileUtils.getRelativePath(mCodePushPath, file);
+        if (relativePath == null) {
+            return;
+        }
+
+        try {
+            StructStat stat = Os.stat(file.getAbsolutePath());
+            mEntries.put(relativePath, new Entry(stat.st_ino, stat.st_size, file.lastModified(), hash));
+        } catch (ErrnoException e) {
+            CodePushUtils.log("Unable to stat " + file.getName() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Drops the entries of deleted files and writes the index.
+     */
+    public void save() throws IOException {
+        Iterator<Map.Entry<String, Entry>> iterator = mEntries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            if (!new File(mCodePushPath, iterator.next().getKey()).exists()) {
+                iterator.remove();
+            }
+        }
+
+        File indexFile = getIndexFile(mCodePushPath);
+        File tempFile = new File(indexFile.getPath() + ".tmp");
+        PrintWriter writer = new PrintWriter(tempFile);
+        try {
+            for (Map.Entry<String, Entry> entry : mEntries.entrySet()) {
+                Entry value = entry.getValue();
+                writer.print(value.mInode + " " + value.mSize + " " + value.mModifiedTime + " " + value.mHash + " " + entry.getKey() + "\n");
+            }
+        } finally {
+            writer.close();
+        }
+
+        if (!tempFile.renameTo(indexFile)) {
+            throw new IOException("Unable to replace hash cache " + indexFile.getAbsolutePath());
+        }
+    }
+
+    private static File getIndexFile(String codePushPath) {
+        return new File(codePushPath, CodePushConstants.HASH_CACHE_FILE);
+    }
+
+    private static class Entry {
+        final long mInode;
+        final long mSize;
+        final long mModifiedTime;
+        final String mHash;
+
+        Entry(long inode, long size, long modifiedTime, String hash) {
+            mInode = inode;
+            mSize = size;
+            mModifiedTime = modifiedTime;
+            mHash = hash;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.microsoft.codepush.react;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+/**
+ * Performs the HTTP requests that download updates. The default implementation is
+ * {@link CodePushOkHttpTransport}; apps can install their own with
+ * {@link CodePush#setHttpTransport(CodePushHttpTransport)}.
+ */
+public interface CodePushHttpTransport {
+    /**
+     * Sends a GET request for url with the given headers, following redirects.
+     *
+     * @throws java.net.MalformedURLException if url is not a valid HTTP or HTTPS URL.
+     */
+    Response get(String url, Map<String, String> headers) throws IOException;
+
+    interface Response extends Closeable {
+        int getStatusCode();
+
+        String getHeader(String name);
+
+        /**
+         * Returns the length of the body as sent by the server, or -1 if it is unknown.
+         */
+        long getContentLength();
+
+        /**
+         * Returns the response body.
+         *
+         * @throws IOException if the status code does not indicate success.
+         */
+        InputStream getBody() throws IOException;
+    }
+}
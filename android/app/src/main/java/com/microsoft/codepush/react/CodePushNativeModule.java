@@ -6,7 +6,6 @@ import android.os.AsyncTask;
 import android.os.Handler;
 import android.os.Looper;
 import android.view.View;
-import android.view.Choreographer;
 
 import com.facebook.react.ReactApplication;
 import com.facebook.react.ReactDelegate;
@@ -379,52 +378,18 @@ public class CodePushNativeModule extends ReactContextBaseJavaModule {
                     JSONObject mutableUpdatePackage = CodePushUtils.convertReadableToJsonObject(updatePackage);
                     CodePushUtils.log("mutableUpdatePackage in downloadUpdate :: "+ mutableUpdatePackage);
                     CodePushUtils.setJSONValueForKey(mutableUpdatePackage, CodePushConstants.BINARY_MODIFIED_TIME_KEY, "" + mCodePush.getBinaryResourcesModifiedTime());
-                    mUpdateManager.downloadPackage(getReactApplicationContext(), mutableUpdatePackage, mCodePush.getAssetsBundleFileName(), new DownloadProgressCallback() {
-                        private boolean hasScheduledNextFrame = false;
-                        private DownloadProgress latestDownloadProgress = null;
-
-                        @Override
-                        public void call(DownloadProgress downloadProgress) {
-                            if (!notifyProgress) {
-                                return;
-                            }
-
-                            latestDownloadProgress = downloadProgress;
-                            // If the download is completed, synchronously send the last event.
-                            if (latestDownloadProgress.isCompleted()) {
-                                dispatchDownloadProgressEvent();
-                                return;
-                            }
-
-                            if (hasScheduledNextFrame) {
-                                return;
+                    DownloadProgressCallback progressCallback;
+                    if (notifyProgress) {
+                        progressCallback = new DownloadProgressReporter(getReactApplicationContext(),
+                                CodePush.getDownloadProgressInterval(), CodePush.getDownloadProgressByteThreshold());
+                    } else {
+                        progressCallback = new DownloadProgressCallback() {
+                            @Override
+                            public void call(long totalBytes, long receivedBytes, long decompressedBytes) {
                             }
-
-                            hasScheduledNextFrame = true;
-                            getReactApplicationContext().runOnUiQueueThread(new Runnable() {
-                                @Override
-                                public void run() {
-                                    //ChoreographerCompat was removed in rn v0.80 [https://github.com/facebook/react-native/issues/52953]
-                                    Choreographer.getInstance().postFrameCallback(new Choreographer.FrameCallback() {
-                                        @Override
-                                        public void doFrame(long frameTimeNanos) {
-                                            if (!latestDownloadProgress.isCompleted()) {
-                                                dispatchDownloadProgressEvent();
-                                            }
-
-                                            hasScheduledNextFrame = false;
-                                        }
-                                    });
-                                }
-                            });
-                        }
-
-                        public void dispatchDownloadProgressEvent() {
-                            getReactApplicationContext()
-                                    .getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
-                                    .emit(CodePushConstants.DOWNLOAD_PROGRESS_EVENT_NAME, latestDownloadProgress.createWritableMap());
-                        }
-                    }, mCodePush.getPublicKey());
+                        };
+                    }
+                    mUpdateManager.downloadPackage(getReactApplicationContext(), mutableUpdatePackage, mCodePush.getAssetsBundleFileName(), progressCallback, mCodePush.getPublicKey());
 
                     JSONObject newPackage = mUpdateManager.getPackage(CodePushUtils.tryGetString(updatePackage, CodePushConstants.PACKAGE_HASH_KEY));
                     promise.resolve(CodePushUtils.convertJsonObjectToWritable(newPackage));
@@ -0,0 +1,82 @@
+package com.microsoft.codepush.react;
+
+import com.facebook.react.modules.network.OkHttpClientProvider;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.util.Map;
+
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.ResponseBody;
+
+/**
+ * Downloads updates with OkHttp, which pools keep-alive connections, negotiates HTTP/2 and
+ * resumes TLS sessions across downloads. By default the client React Native uses for its own
+ * networking is shared.
+ */
+public class CodePushOkHttpTransport implements CodePushHttpTransport {
+    private final OkHttpClient mClient;
+
+    public CodePushOkHttpTransport() {
+        this(OkHttpClientProvider.getOkHttpClient());
+    }
+
+    public CodePushOkHttpTransport(OkHttpClient client) {
+        mClient = client;
+    }
+
+    @Override
+    public Response get(String url, Map<String, String> headers) throws IOException {
+        HttpUrl httpUrl = HttpUrl.parse(url);
+        if (httpUrl == null) {
+            throw new MalformedURLException("Invalid download URL: " + url);
+        }
+
+        Request.Builder requestBuilder = new Request.Builder().url(httpUrl);
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            requestBuilder.header(header.getKey(), header.getValue());
+        }
+        return new OkHttpResponse(mClient.newCall(requestBuilder.build()).execute());
+    }
+
+    private static class OkHttpResponse implements Response {
+        private final okhttp3.Response mResponse;
+
+        OkHttpResponse(okhttp3.Response response) {
+            mResponse = response;
+        }
+
+        @Override
+        public int getStatusCode() {
+            return mResponse.code();
+        }
+
+        @Override
+        public String getHeader(String name) {
+            return mResponse.header(name);
+        }
+
+        @Override
+        public long getContentLength() {
+            ResponseBody body = mResponse.body();
+            return body != null ? body.contentLength() : -1;
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            ResponseBody body = mResponse.body();
+            if (!mResponse.isSuccessful() || body == null) {
+                throw new IOException("Server returned HTTP " + mResponse.code() + " for " + mResponse.request().url());
+            }
+            return body.byteStream();
+        }
+
+        @Override
+        public void close() {
+            mResponse.close();
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.microsoft.codepush.react;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decodes compressed package files in place on up to threadCount worker threads, while the rest
+ * of the package is still being extracted. When they are all busy, the file is decoded on the
+ * calling thread. Once a file fails to decode, the files submitted after it are skipped. The ones
+ * submitted before it are still decoded, so the failure reported is always the one of the
+ * earliest file that fails.
+ */
+class CodePushParallelDecompressor {
+    private final Semaphore mIdleThreads;
+    private final boolean mRecordHashes;
+    private final List<String> mRelativePaths = new ArrayList<>();
+    private final List<Future<String>> mTasks = new ArrayList<>();
+    // Index of the earliest submitted file that failed, -1 once shut down.
+    private final AtomicInteger mFirstFailedIndex = new AtomicInteger(Integer.MAX_VALUE);
+
+    public CodePushParallelDecompressor(int threadCount, boolean recordHashes) {
+        mIdleThreads = new Semaphore(Math.max(1, threadCount));
+        mRecordHashes = recordHashes;
+    }
+
+    /**
+     * Schedules compressedFile to be decoded into file, after which compressedFile is deleted.
+     */
+    public void submit(final File compressedFile, final File file, final CodePushCompressionMode compressionMode,
+                       final long modifiedTime, final String relativePath) {
+        final int index = mTasks.size();
+        mRelativePaths.add(relativePath);
+        if (!mIdleThreads.tryAcquire()) {
+            FutureTask<String> task = new FutureTask<>(new Callable<String>() {
+                @Override
+                public String call() {
+                    return decompress(index, compressedFile, file, compressionMode, modifiedTime, relativePath);
+                }
+            });
+            task.run();
+            mTasks.add(task);
+            return;
+        }
+
+        mTasks.add(CodePushWorkerPool.submit(new Callable<String>() {
+            @Override
+            public String call() {
+                try {
+                    return decompress(index, compressedFile, file, compressionMode, modifiedTime, relativePath);
+                } finally {
+                    mIdleThreads.release();
+                }
+            }
+        }));
+    }
+
+    /**
+     * Waits for all the submitted files and records their hashes in fileHashes, if not null.
+     */
+    public void awaitCompletion(Map<String, String> fileHashes) {
+        try {
+            for (int i = 0; i < mTasks.size(); i++) {
+                String hash = mTasks.get(i).get();
+                if (fileHashes != null && hash != null) {
+                    fileHashes.put(mRelativePaths.get(i), hash);
+                }
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new CodePushUnknownException("Failed to decompress update contents.", cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CodePushUnknownException("Decompression of update contents was interrupted.", e);
+        }
+    }
+
+    public void shutdown() {
+        mFirstFailedIndex.set(-1);
+    }
+
+    private boolean isSkipped(int index) {
+        return index > mFirstFailedIndex.get();
+    }
+
+    private void setFailed(int index) {
+        int firstFailedIndex;
+        while (index < (firstFailedIndex = mFirstFailedIndex.get())
+                && !mFirstFailedIndex.compareAndSet(firstFailedIndex, index)) {
+        }
+    }
+
+    private String decompress(int index, File compressedFile, File file, CodePushCompressionMode compressionMode, long modifiedTime,
+                              String relativePath) {
+        if (isSkipped(index)) {
+            return null;
+        }
+
+        byte[] buffer = CodePushWorkerPool.getBuffer();
+        MessageDigest digest = mRecordHashes ? CodePushWorkerPool.getDigest() : null;
+        InputStream input = null;
+        FileOutputStream output = null;
+        try {
+            if (digest == null && compressionMode == CodePushCompressionMode.BROTLI) {
+                // Nothing to hash, so the native decoder can do the whole file without crossing JNI per buffer.
+                CodePushBrotliDecoder.decodeFile(compressedFile, file);
+                return finish(compressedFile, file, modifiedTime, null);
+            }
+
+            input = FileUtils.newDecodingStream(new FileInputStream(compressedFile), compressionMode);
+            output = new FileOutputStream(file);
+            int numBytesRead;
+            while ((numBytesRead = input.read(buffer)) != -1) {
+                if (isSkipped(index)) {
+                    return null;
+                }
+                output.write(buffer, 0, numBytesRead);
+                if (digest != null) digest.update(buffer, 0, numBytesRead);
+            }
+        } catch (RuntimeException e) {
+            setFailed(index);
+            throw e;
+        } catch (IOException e) {
+            setFailed(index);
+            String entryName = relativePath + compressionMode.getFileExtension();
+            CodePushUtils.log("Failed to decompress " + entryName + ": " + e.getMessage());
+            throw new CodePushUnknownException("Failed to decompress " + entryName + ": " + e.getMessage());
+        } finally {
+            try {
+                if (input != null) input.close();
+                if (output != null) output.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        return finish(compressedFile, file, modifiedTime, digest != null ? CodePushUpdateUtils.formatHash(digest.digest()) : null);
+    }
+
+    private static String finish(File compressedFile, File file, long modifiedTime, String hash) {
+        compressedFile.delete();
+        if (modifiedTime > 0) {
+            file.setLastModified(modifiedTime);
+        }
+        return hash;
+    }
+}
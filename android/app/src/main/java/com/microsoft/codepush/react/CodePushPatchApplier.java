@@ -0,0 +1,130 @@
+package com.microsoft.codepush.react;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Applies the per-file patches listed in the patch manifest of a diff update. The manifest is a
+ * JSON object with a "patchedFiles" array of {"basePath", "targetPath", "targetHash"} objects.
+ * The patch for each file is shipped at targetPath + ".patch", basePath is relative to the
+ * current package and targetPath to the new one. Every patched file is checked against its
+ * targetHash.
+ */
+class CodePushPatchApplier {
+    private static final String PATCHED_FILES_KEY = "patchedFiles";
+    private static final String BASE_PATH_KEY = "basePath";
+    private static final String TARGET_PATH_KEY = "targetPath";
+    private static final String TARGET_HASH_KEY = "targetHash";
+    private static final String PATCH_FILE_EXTENSION = ".patch";
+    // Each patch holds a window of the new file and the pages of the base file it reads.
+    private static final int MAX_THREAD_COUNT = 4;
+
+    private final int mThreadCount;
+
+    public CodePushPatchApplier() {
+        this(Math.min(MAX_THREAD_COUNT, Runtime.getRuntime().availableProcessors()));
+    }
+
+    public CodePushPatchApplier(int threadCount) {
+        mThreadCount = Math.max(1, threadCount);
+    }
+
+    /**
+     * Applies the patches listed in manifestFile and deletes the patch files. If fileHashes is
+     * not null, the entries of the patch files are replaced with the ones of the patched files.
+     */
+    public void apply(File manifestFile, String baseFolderPath, final String updateFolderPath,
+                      Map<String, String> fileHashes) throws IOException {
+        final List<PatchedFile> patchedFiles = readManifest(manifestFile, baseFolderPath, updateFolderPath);
+        // The largest patches go first so that a big file doesn't end up running alone at the end.
+        Collections.sort(patchedFiles, new Comparator<PatchedFile>() {
+            @Override
+            public int compare(PatchedFile first, PatchedFile second) {
+                return Long.compare(second.mPatchFile.length(), first.mPatchFile.length());
+            }
+        });
+
+        CodePushWorkerPool.run(mThreadCount, patchedFiles.size(), new CodePushWorkerPool.Task() {
+            @Override
+            public void run(int index) {
+                applyPatch(patchedFiles.get(index));
+            }
+        });
+
+        for (PatchedFile patchedFile : patchedFiles) {
+            patchedFile.mPatchFile.delete();
+            if (fileHashes != null) {
+                fileHashes.remove(patchedFile.mTargetPath + PATCH_FILE_EXTENSION);
+                fileHashes.put(patchedFile.mTargetPath, patchedFile.mTargetHash);
+            }
+        }
+        CodePushUtils.log("Applied " + patchedFiles.size() + " file patches");
+    }
+
+    private static List<PatchedFile> readManifest(File manifestFile, String baseFolderPath, String updateFolderPath) throws IOException {
+        JSONObject manifest = CodePushUtils.getJsonObjectFromFile(manifestFile.getAbsolutePath());
+        List<PatchedFile> patchedFiles = new ArrayList<>();
+        try {
+            JSONArray entries = manifest.getJSONArray(PATCHED_FILES_KEY);
+            for (int i = 0; i < entries.length(); i++) {
+                JSONObject entry = entries.getJSONObject(i);
+                String basePath = CodePushZipExtractor.resolveEntryPath(entry.getString(BASE_PATH_KEY));
+                String targetPath = CodePushZipExtractor.resolveEntryPath(entry.getString(TARGET_PATH_KEY));
+                File baseFile = new File(baseFolderPath, basePath);
+                File patchFile = new File(updateFolderPath, targetPath + PATCH_FILE_EXTENSION);
+                if (!baseFile.isFile() || !patchFile.isFile()) {
+                    throw new CodePushInvalidUpdateException("Update is invalid - The base file or the patch of \"" + targetPath + "\" could not be found.");
+                }
+                patchedFiles.add(new PatchedFile(baseFile, patchFile, new File(updateFolderPath, targetPath),
+                        targetPath, entry.getString(TARGET_HASH_KEY)));
+            }
+        } catch (JSONException e) {
+            throw new CodePushMalformedDataException(manifestFile.getAbsolutePath(), e);
+        } catch (IllegalStateException e) {
+            throw new CodePushInvalidUpdateException("Update is invalid - " + e.getMessage());
+        }
+        return patchedFiles;
+    }
+
+    private static void applyPatch(PatchedFile patchedFile) {
+        // bsPatchFile replaces the target instead of writing through it, so a file linked from
+        // the current package is left untouched. A corrupt patch must fail the update rather than
+        // exit the process, so the in-memory patcher isn't used.
+        int result = CodePushUpdateManager.bsPatchFile(patchedFile.mBaseFile.getAbsolutePath(),
+                patchedFile.mTargetFile.getAbsolutePath(), patchedFile.mPatchFile.getAbsolutePath(), null, false);
+        if (result != 0) {
+            throw new CodePushUnknownException("Failed to patch " + patchedFile.mTargetPath + ", error " + result);
+        }
+
+        String hash = CodePushUpdateUtils.computeFileHash(patchedFile.mTargetFile);
+        if (!patchedFile.mTargetHash.equals(hash)) {
+            CodePushUtils.log("Expected hash of " + patchedFile.mTargetPath + ": " + patchedFile.mTargetHash + ", actual hash: " + hash);
+            throw new CodePushInvalidUpdateException("The patched file " + patchedFile.mTargetPath + " failed the data integrity check.");
+        }
+    }
+
+    private static class PatchedFile {
+        final File mBaseFile;
+        final File mPatchFile;
+        final File mTargetFile;
+        final String mTargetPath;
+        final String mTargetHash;
+
+        PatchedFile(File baseFile, File patchFile, File targetFile, String targetPath, String targetHash) {
+            mBaseFile = baseFile;
+            mPatchFile = patchFile;
+            mTargetFile = targetFile;
+            mTargetPath = targetPath;
+            mTargetHash = targetHash;
+        }
+    }
+}
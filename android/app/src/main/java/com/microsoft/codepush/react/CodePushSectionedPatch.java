@@ -0,0 +1,140 @@
+package com.microsoft.codepush.react;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Applies sectioned patches: a container of independent bsdiff patches, each rebuilding one
+ * section of the new file from its own region of the old one. The format knows nothing about
+ * the files it patches. Where to cut the sections is up to the tool that makes the patch, e.g.
+ * at the string table, function headers and bytecode of a Hermes bundle, so that renumbering in
+ * one of them doesn't spoil the delta of the whole file. No such tool is part of this repository.
+ *
+ * Patch layout, with the integers in the 8 byte format of bsdiff:
+ * <pre>
+ * "CODEPUSH/SECDIFF"  magic
+ * newSize             size of the new file
+ * sectionCount
+ * sectionCount times:
+ *   baseOffset, baseLength, newLength
+ *   control, diff and extra data of a bsdiff patch from the base region to the new section
+ * </pre>
+ * The new sections are written one after the other, so their lengths must add up to newSize.
+ */
+class CodePushSectionedPatch {
+    private static final byte[] MAGIC = {'C', 'O', 'D', 'E', 'P', 'U', 'S', 'H', '/', 'S', 'E', 'C', 'D', 'I', 'F', 'F'};
+    private static final int PATCH_BUFFER_SIZE = 64 * 1024;
+
+    private CodePushSectionedPatch() {
+    }
+
+    /**
+     * Returns whether patchFile is a sectioned patch, as opposed to a plain bsdiff one.
+     */
+    public static boolean isSectionedPatch(File patchFile) {
+        DataInputStream input = null;
+        try {
+            input = new DataInputStream(new FileInputStream(patchFile));
+            byte[] magic = new byte[MAGIC.length];
+            input.readFully(magic);
+            return Arrays.equals(magic, MAGIC);
+        } catch (IOException e) {
+            return false;
+        } finally {
+            CodePushBsPatch.closeQuietly(input);
+        }
+    }
+
+    /**
+     * Applies the sectioned patchFile to oldFile and writes the result to newFile. Returns the
+     * same results as {@link CodePushBsPatch#bsPatchFile}, and reports progress the same way.
+     */
+    public static int bsPatchFile(String oldFile, String newFile, String patchFile, int windowSize, PatchProgressCallback callback) {
+        DataInputStream patch = null;
+        RandomAccessFile old = null;
+        FileOutputStream output = null;
+        try {
+            try {
+                patch = new DataInputStream(new BufferedInputStream(new FileInputStream(patchFile), PATCH_BUFFER_SIZE));
+            } catch (IOException e) {
+                throw new CodePushBsPatch.PatchException(CodePushBsPatch.BSPATCH_ERROR_PATCH_FILE);
+            }
+
+            byte[] header = new byte[MAGIC.length + 16];
+            CodePushBsPatch.readPatch(patch, header, 0, header.length);
+            long newSize = CodePushBsPatch.offtin(header, MAGIC.length);
+            long sectionCount = CodePushBsPatch.offtin(header, MAGIC.length + 8);
+            if (!Arrays.equals(Arrays.copyOf(header, MAGIC.length), MAGIC) || newSize < 0 || sectionCount < 0) {
+                throw new CodePushBsPatch.PatchException(CodePushBsPatch.BSPATCH_ERROR_CORRUPT_PATCH);
+            }
+
+            ByteBuffer oldData;
+            try {
+                old = new RandomAccessFile(oldFile, "r");
+                long oldSize = old.length();
+                if (oldSize > Integer.MAX_VALUE) {
+                    throw new CodePushBsPatch.PatchException(CodePushBsPatch.BSPATCH_ERROR_OLD_FILE);
+                }
+                oldData = old.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, oldSize);
+            } catch (IOException e) {
+                throw new CodePushBsPatch.PatchException(CodePushBsPatch.BSPATCH_ERROR_OLD_FILE);
+            }
+
+            try {
+                output = new FileOutputStream(newFile);
+            } catch (IOException e) {
+                throw new CodePushBsPatch.PatchException(CodePushBsPatch.BSPATCH_ERROR_NEW_FILE);
+            }
+
+            byte[] window = new byte[windowSize > 0 ? windowSize : CodePushConstants.PATCH_WINDOW_SIZE];
+            byte[] sectionHeader = new byte[24];
+            CodePushBsPatch.Progress progress = new CodePushBsPatch.Progress(callback, newSize);
+            long written = 0;
+            for (long i = 0; i < sectionCount; i++) {
+                CodePushBsPatch.readPatch(patch, sectionHeader, 0, sectionHeader.length);
+                long baseOffset = CodePushBsPatch.offtin(sectionHeader, 0);
+                long baseLength = CodePushBsPatch.offtin(sectionHeader, 8);
+                long sectionSize = CodePushBsPatch.offtin(sectionHeader, 16);
+                // Written so that a huge offset or length can't overflow past the checks.
+                if (baseOffset < 0 || baseLength < 0 || baseOffset > oldData.capacity()
+                        || baseLength > oldData.capacity() - baseOffset
+                        || sectionSize < 0 || sectionSize > newSize - written) {
+                    throw new CodePushBsPatch.PatchException(CodePushBsPatch.BSPATCH_ERROR_CORRUPT_PATCH);
+                }
+
+                ByteBuffer base = oldData.duplicate();
+                base.position((int) baseOffset);
+                base.limit((int) (baseOffset + baseLength));
+                CodePushBsPatch.patchStream(base.slice(), patch, sectionSize, output, window, progress);
+                written += sectionSize;
+            }
+
+            if (written != newSize) {
+                throw new CodePushBsPatch.PatchException(CodePushBsPatch.BSPATCH_ERROR_CORRUPT_PATCH);
+            }
+
+            try {
+                output.close();
+            } catch (IOException e) {
+                throw new CodePushBsPatch.PatchException(CodePushBsPatch.BSPATCH_ERROR_NEW_FILE);
+            } finally {
+                output = null;
+            }
+            return CodePushBsPatch.BSPATCH_OK;
+        } catch (CodePushBsPatch.PatchException e) {
+            return e.mResult;
+        } finally {
+            CodePushBsPatch.closeQuietly(patch);
+            CodePushBsPatch.closeQuietly(old);
+            CodePushBsPatch.closeQuietly(output);
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package com.microsoft.codepush.react;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Downloads a file over several connections at once, each fetching its own byte range
+ * into a preallocated destination file.
+ */
+class CodePushSegmentedDownloader {
+    private static final int MIN_SEGMENT_SIZE = 1024 * 1024;
+    private static final int PROGRESS_POLL_INTERVAL_MS = 100;
+
+    private final CodePushHttpTransport mTransport;
+    private final String mUrl;
+    private final Map<String, String> mRequestHeaders;
+    private final int mConnectionCount;
+
+    public CodePushSegmentedDownloader(CodePushHttpTransport transport, String url, Map<String, String> requestHeaders, int connectionCount) {
+        mTransport = transport;
+        mUrl = url;
+        mRequestHeaders = requestHeaders;
+        mConnectionCount = connectionCount;
+    }
+
+    /**
+     * Downloads the file into destination.
+     *
+     * @return false if the server does not support range requests, the file is too small to be
+     * worth splitting or a segment failed, in which case destination has been deleted and the
+     * caller should fall back to a single stream.
+     */
+    public boolean download(File destination, DownloadProgressCallback progressCallback) throws IOException {
+        // Probe with a one byte range to learn the total size and whether ranges are honoured at all.
+        CodePushHttpTransport.Response probe = sendRequest("bytes=0-0", null);
+        long totalBytes;
+        String validator;
+        try {
+            if (probe.getStatusCode() != HttpURLConnection.HTTP_PARTIAL) {
+                CodePushUtils.log("Server does not support range requests, using a single connection.");
+                return false;
+            }
+
+            String contentRange = probe.getHeader("Content-Range");
+            long[] range = CodePushDownloadCheckpoint.parseContentRange(contentRange);
+            if (range == null || range[2] < 0) {
+                CodePushUtils.log("Unknown package size in Content-Range \"" + contentRange + "\", using a single connection.");
+                return false;
+            }
+
+            totalBytes = range[2];
+            // Without a validator a package that changes during the download would be stitched
+            // together from both versions.
+            validator = CodePushDownloadCheckpoint.getIfRangeValidator(probe.getHeader("ETag"), probe.getHeader("Last-Modified"));
+            if (validator == null) {
+                CodePushUtils.log("Server sent no strong ETag or Last-Modified, using a single connection.");
+                return false;
+            }
+        } finally {
+            probe.close();
+        }
+
+        int segmentCount = (int) Math.min(mConnectionCount, (totalBytes + MIN_SEGMENT_SIZE - 1) / MIN_SEGMENT_SIZE);
+        if (segmentCount <= 1) {
+            return false;
+        }
+
+        CodePushUtils.log("Downloading " + totalBytes + " bytes over " + segmentCount + " connections.");
+        RandomAccessFile file = new RandomAccessFile(destination, "rw");
+        ExecutorService executor = Executors.newFixedThreadPool(segmentCount);
+        boolean completed = false;
+        try {
+            file.setLength(totalBytes);
+            FileChannel channel = file.getChannel();
+            AtomicLong receivedBytes = new AtomicLong();
+            long segmentSize = (totalBytes + segmentCount - 1) / segmentCount;
+
+            List<Future<Void>> segments = new ArrayList<>();
+            for (long start = 0; start < totalBytes; start += segmentSize) {
+                long end = Math.min(start + segmentSize, totalBytes) - 1;
+                segments.add(executor.submit(new SegmentTask(channel, start, end, validator, receivedBytes)));
+            }
+
+            // Progress is reported from the calling thread only, so callbacks never run concurrently.
+            for (Future<Void> segment : segments) {
+                while (true) {
+                    try {
+                        segment.get(PROGRESS_POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                        break;
+                    } catch (TimeoutException e) {
+                        progressCallback.call(totalBytes, receivedBytes.get(), receivedBytes.get());
+                    }
+                }
+            }
+
+            progressCallback.call(totalBytes, receivedBytes.get(), receivedBytes.get());
+            if (receivedBytes.get() != totalBytes) {
+                CodePushUtils.log("Received " + receivedBytes.get() + " bytes, expected " + totalBytes + ", using a single connection.");
+                return false;
+            }
+            completed = true;
+            return true;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                // A single connection may still get through, e.g. a proxy that mangles ranges.
+                CodePushUtils.log("Segmented download failed, using a single connection: " + cause.getMessage());
+                return false;
+            }
+            throw new CodePushUnknownException("Segmented download failed.", cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CodePushUnknownException("Segmented download was interrupted.", e);
+        } finally {
+            executor.shutdownNow();
+            file.close();
+            if (!completed) {
+                destination.delete();
+            }
+        }
+    }
+
+    private CodePushHttpTransport.Response sendRequest(String range, String validator) throws IOException {
+        Map<String, String> headers = new HashMap<>(mRequestHeaders);
+        headers.put("Accept-Encoding", "identity");
+        headers.put("Range", range);
+        if (validator != null) {
+            headers.put("If-Range", validator);
+        }
+        return mTransport.get(mUrl, headers);
+    }
+
+    private class SegmentTask implements Callable<Void> {
+        private final FileChannel mChannel;
+        private final long mStart;
+        private final long mEnd;
+        private final String mValidator;
+        private final AtomicLong mReceivedBytes;
+
+        SegmentTask(FileChannel channel, long start, long end, String validator, AtomicLong receivedBytes) {
+            mChannel = channel;
+            mStart = start;
+            mEnd = end;
+            mValidator = validator;
+            mReceivedBytes = receivedBytes;
+        }
+
+        @Override
+        public Void call() throws IOException {
+            CodePushHttpTransport.Response response = sendRequest("bytes=" + mStart + "-" + mEnd, mValidator);
+            InputStream input = null;
+            try {
+                input = response.getBody();
+                if (response.getStatusCode() != HttpURLConnection.HTTP_PARTIAL) {
+                    // If-Range fell back to a full response, so the package changed under us.
+                    throw new IOException("Package changed on the server while downloading segment " + mStart + "-" + mEnd);
+                }
+                long[] range = CodePushDownloadCheckpoint.parseContentRange(response.getHeader("Content-Range"));
+                if (range == null || range[0] != mStart || range[1] != mEnd) {
+                    throw new IOException("Server sent Content-Range \"" + response.getHeader("Content-Range")
+                            + "\" for segment " + mStart + "-" + mEnd);
+                }
+
+                byte[] data = new byte[CodePushConstants.DOWNLOAD_BUFFER_SIZE];
+                ByteBuffer buffer = ByteBuffer.wrap(data);
+                long position = mStart;
+                int numBytesRead;
+                while (position <= mEnd && (numBytesRead = input.read(data, 0, (int) Math.min(data.length, mEnd - position + 1))) >= 0) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        throw new IOException("Segment " + mStart + "-" + mEnd + " was cancelled.");
+                    }
+
+                    buffer.clear();
+                    buffer.limit(numBytesRead);
+                    while (buffer.hasRemaining()) {
+                        position += mChannel.write(buffer, position);
+                    }
+                    mReceivedBytes.addAndGet(numBytesRead);
+                }
+
+                if (position != mEnd + 1) {
+                    throw new IOException("Segment " + mStart + "-" + mEnd + " ended after " + (position - mStart) + " bytes.");
+                }
+                return null;
+            } finally {
+                if (input != null) input.close();
+                response.close();
+            }
+        }
+    }
+}
@@ -1,6 +1,6 @@
 package com.microsoft.codepush.react;
 
-import android.os.Build;
+import android.content.res.AssetFileDescriptor;
 
 import com.facebook.react.bridge.ReactApplicationContext;
 import com.facebook.react.bridge.ReactContext;
@@ -11,23 +11,39 @@ import org.json.JSONObject;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.EOFException;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
+import java.io.RandomAccessFile;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
-import java.net.URL;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
 
-import javax.net.ssl.HttpsURLConnection;
 
 public class CodePushUpdateManager {
+    private static final String BINARY_BUNDLE_SIZE_KEY = "size";
+    private static final String BINARY_BUNDLE_MODIFIED_TIME_KEY = "modifiedTime";
+    private static final String BINARY_BUNDLE_HASH_KEY = "hash";
+    private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
 
     private String mDocumentsDirectory;
+    // Incremented by every download, so that patches of an older download can tell they are stale.
+    private final AtomicLong mDownloadGeneration = new AtomicLong();
 
-    private int bsPatchFile(String oldFile, String newFile, String patchFile) {
+    // callback, if not null, receives the progress of the patch and can cancel it. The in-memory
+    // patcher exits the process on a corrupt patch, so it is only used if inMemoryPatchAllowed.
+    static int bsPatchFile(String oldFile, String newFile, String patchFile, PatchProgressCallback callback,
+                           boolean inMemoryPatchAllowed) {
         CodePushUtils.log("Applying patch from " + oldFile + " to " + newFile + " with patch file " + patchFile);
 
         File oldFileObj = new File(oldFile);
@@ -51,6 +67,39 @@ public class CodePushUpdateManager {
             }
         }
 
+        if (BsDiffPatchLoader.isMultiBlockPatch(patchFile)) {
+            if (CodePush.isJavaPatchEngineEnabled() || !BsDiffPatchLoader.isAvailable()) {
+                CodePushUtils.log("bsPatchFile: Multi-block patches need the native patch engine.");
+                return -1;
+            }
+            int result = BsDiffPatchLoader.nativeBsPatchFileMultiBlock(oldFile, newFile, patchFile, Runtime.getRuntime().availableProcessors(), callback);
+            CodePushUtils.log("bsPatchFile: multi-block patch returned " + result);
+            if (result != 0) {
+                newFileObj.delete();
+            }
+            return result;
+        }
+
+        if (CodePush.isJavaPatchEngineEnabled() || !BsDiffPatchLoader.isAvailable()) {
+            int result = CodePushBsPatch.bsPatchFile(oldFile, newFile, patchFile, CodePushConstants.PATCH_WINDOW_SIZE, callback);
+            CodePushUtils.log("bsPatchFile: Java patch engine returned " + result);
+            if (result != 0) {
+                newFileObj.delete();
+            }
+            return result;
+        }
+
+        // The in-memory patcher only writes the new file at the end, so it has no progress to report.
+        if (CodePush.isStreamingPatchEnabled() || callback != null || !inMemoryPatchAllowed) {
+            long[] rssIncreaseKb = new long[1];
+            int result = BsDiffPatchLoader.nativeBsPatchFileStreaming(oldFile, newFile, patchFile, CodePushConstants.PATCH_WINDOW_SIZE, rssIncreaseKb, callback);
+            CodePushUtils.log("bsPatchFile: streaming patch returned " + result + ", RSS increase " + rssIncreaseKb[0] + " KB");
+            if (result != 0) {
+                newFileObj.delete();
+            }
+            return result;
+        }
+
         return BsDiffPatchLoader.nativeBsPatchFile(oldFile, newFile, patchFile);
     }
 
@@ -62,12 +111,16 @@ public class CodePushUpdateManager {
         return CodePushUtils.appendPathComponent(getCodePushPath(), CodePushConstants.DOWNLOAD_FILE_NAME);
     }
 
+    private String getDownloadCheckpointFilePath() {
+        return CodePushUtils.appendPathComponent(getCodePushPath(), CodePushConstants.DOWNLOAD_CHECKPOINT_FILE_NAME);
+    }
+
     private String getUnzippedFolderPath() {
         return CodePushUtils.appendPathComponent(getCodePushPath(), CodePushConstants.UNZIPPED_FOLDER_NAME);
     }
 
-    private String getDecompressedFolderPath() {
-        return CodePushUtils.appendPathComponent(getCodePushPath(), CodePushConstants.DECOMPRESSED_FOLDER_NAME);
+    private String getContentStorePath() {
+        return CodePushUtils.appendPathComponent(getCodePushPath(), CodePushConstants.CONTENT_STORE_FOLDER_NAME);
     }
 
     private String getDocumentsDirectory() {
@@ -197,7 +250,16 @@ public class CodePushUpdateManager {
                                 DownloadProgressCallback progressCallback,
                                 String stringPublicKey) throws IOException {
         String newUpdateHash = updatePackage.optString(CodePushConstants.PACKAGE_HASH_KEY, null);
+        PatchProgressReporter patchProgress = new PatchProgressReporter(context, mDownloadGeneration,
+                mDownloadGeneration.incrementAndGet(), CodePush.getDownloadProgressInterval());
         boolean isBundlePatchingEnabled = updatePackage.optBoolean(CodePushConstants.IS_BUNDLE_PATCHING_ENABLED, false);
+        String binaryModifiedTime = updatePackage.optString(CodePushConstants.BINARY_MODIFIED_TIME_KEY, null);
+        // Set when the patch was made against an installed package instead of the binary bundle.
+        String patchBasePackageHash = updatePackage.isNull(CodePushConstants.PATCH_BASE_PACKAGE_HASH_KEY)
+                ? null : updatePackage.optString(CodePushConstants.PATCH_BASE_PACKAGE_HASH_KEY, null);
+        // Passed down from the sync options for this download only, so it is not saved with the package.
+        int decompressionThreadCount = Math.max(1, updatePackage.optInt(CodePushConstants.DECOMPRESSION_THREAD_COUNT_KEY, 1));
+        updatePackage.remove(CodePushConstants.DECOMPRESSION_THREAD_COUNT_KEY);
         String newUpdateFolderPath = getPackageFolderPath(newUpdateHash);
         String newUpdateMetadataPath = CodePushUtils.appendPathComponent(newUpdateFolderPath, CodePushConstants.PACKAGE_FILE_NAME);
         CodePushUtils.log("DownloadingPackage initiated");
@@ -205,6 +267,8 @@ public class CodePushUpdateManager {
         CodePushUtils.log("newUpdateFolderPath :: " + newUpdateFolderPath);
         CodePushUtils.log("newUpdateMetadataPath :: " + newUpdateMetadataPath);
         CodePushUtils.log("isBundlePatchingEnabled: " + isBundlePatchingEnabled);
+        CodePushUtils.log("patchBasePackageHash: " + patchBasePackageHash);
+        CodePushUtils.log("decompressionThreadCount: " + decompressionThreadCount);
         if (FileUtils.fileAtPathExists(newUpdateFolderPath)) {
             // This removes any stale data in newPackageFolderPath that could have been left
             // uncleared due to a crash or error during the download or install process.
@@ -215,106 +279,46 @@ public class CodePushUpdateManager {
         String downloadUrlString = updatePackage.optString(CodePushConstants.DOWNLOAD_URL_KEY, null);
         //This must be logged to evaluate infra
         CodePushUtils.log("downloadUrlString :: " + downloadUrlString);
-        HttpURLConnection connection = null;
-        BufferedInputStream bin = null;
-        FileOutputStream fos = null;
-        BufferedOutputStream bout = null;
-        File downloadFile = null;
-        boolean isZip = false;
-
-        // Download the file while checking if it is a zip and notifying client of progress.
-        try {
-            URL downloadUrl = new URL(downloadUrlString);
-            connection = (HttpURLConnection) (downloadUrl.openConnection());
-
-            if (android.os.Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP &&
-                downloadUrl.toString().startsWith("https")) {
-                try {
-                    ((HttpsURLConnection)connection).setSSLSocketFactory(new TLSSocketFactory());
-                } catch (Exception e) {
-                    CodePushUtils.log("HTTP exists due to Build version:: " + downloadUrlString);
-                    throw new CodePushUnknownException("Error set SSLSocketFactory. ", e);
-                }
-            }
-
-            String packageName = context.getPackageName();
-            connection.setRequestProperty(CodePushConstants.PACKAGE_NAME_HEADER_KEY, packageName);
-            CodePushUtils.log("Setting " + CodePushConstants.PACKAGE_NAME_HEADER_KEY + " header: " + packageName);
-
-            connection.setRequestProperty("Accept-Encoding", "identity");
-            bin = new BufferedInputStream(connection.getInputStream());
-
-            long totalBytes = connection.getContentLength();
-            long receivedBytes = 0;
-            CodePushUtils.log("totalBytes received in bytes:: "+ totalBytes);
-
-            File downloadFolder = new File(getCodePushPath());
-            downloadFolder.mkdirs();
-            downloadFile = new File(downloadFolder, CodePushConstants.DOWNLOAD_FILE_NAME);
-            fos = new FileOutputStream(downloadFile);
-            bout = new BufferedOutputStream(fos, CodePushConstants.DOWNLOAD_BUFFER_SIZE);
-            byte[] data = new byte[CodePushConstants.DOWNLOAD_BUFFER_SIZE];
-            byte[] header = new byte[4];
-            CodePushUtils.log("downloadFolder path :: "+ getCodePushPath());
-
-            int numBytesRead = 0;
-            while ((numBytesRead = bin.read(data, 0, CodePushConstants.DOWNLOAD_BUFFER_SIZE)) >= 0) {
-                if (receivedBytes < 4) {
-                    for (int i = 0; i < numBytesRead; i++) {
-                        int headerOffset = (int) (receivedBytes) + i;
-                        if (headerOffset >= 4) {
-                            break;
-                        }
-
-                        header[headerOffset] = data[i];
-                    }
-                }
-
-                receivedBytes += numBytesRead;
-                bout.write(data, 0, numBytesRead);
-                progressCallback.call(new DownloadProgress(totalBytes, receivedBytes));
-            }
-
-            if (totalBytes != receivedBytes) {
-                throw new CodePushUnknownException("Received " + receivedBytes + " bytes, expected " + totalBytes);
-            }
-
+        String unzippedFolderPath = getUnzippedFolderPath();
+        File downloadFile;
+        CodePushCompressionMode compressionMode = null;
+        // Hashes of the update contents, recorded while they are written so that the integrity
+        // check doesn't need to read every file again.
+        Map<String, String> fileHashes = new HashMap<>();
+        if (CodePush.isStreamingUnzipEnabled()) {
+            // Zip payloads are extracted while they arrive, only other payloads end up in download.zip.
+            compressionMode = streamUpdateFromUrl(context, downloadUrlString, unzippedFolderPath, fileHashes, decompressionThreadCount, progressCallback);
             emitDownloadStatusEvent(context, CodePushConstants.DOWNLOAD_REQUEST_SUCCESS);
-
-            isZip = ByteBuffer.wrap(header).getInt() == 0x504b0304;
-        } catch (MalformedURLException e) {
-            throw new CodePushMalformedDataException(downloadUrlString, e);
-        } finally {
-            try {
-                if (bout != null) bout.close();
-                if (fos != null) fos.close();
-                if (bin != null) bin.close();
-                if (connection != null) connection.disconnect();
-            } catch (IOException e) {
-                throw new CodePushUnknownException("Error closing IO resources.", e);
+            downloadFile = new File(getDownloadFilePath());
+        } else {
+            downloadFile = downloadUpdateFile(context, downloadUrlString, progressCallback);
+            emitDownloadStatusEvent(context, CodePushConstants.DOWNLOAD_REQUEST_SUCCESS);
+            if (FileUtils.isZipFile(downloadFile)) {
+                CodePushUtils.log("Unzipping ");
+                // Unzip the downloaded file and then delete the zip
+                int unzipThreadCount = CodePush.getUnzipThreadCount();
+                if (unzipThreadCount > 1) {
+                    // Compressed entries are decoded on the extraction threads as well.
+                    compressionMode = new CodePushZipExtractor(unzipThreadCount, CodePush.isRestoreFileTimesEnabled())
+                            .extract(downloadFile, unzippedFolderPath, fileHashes);
+                } else {
+                    compressionMode = FileUtils.unzipFile(downloadFile, unzippedFolderPath, fileHashes, decompressionThreadCount);
+                }
+                FileUtils.deleteFileOrFolderSilently(downloadFile);
             }
         }
+        boolean isZip = compressionMode != null;
 
         if (isZip) {
-            CodePushUtils.log("Unzipping ");
-            // Unzip the downloaded file and then delete the zip
-            String unzippedFolderPath = getUnzippedFolderPath();
-            CodePushCompressionMode compressionMode = FileUtils.unzipFile(downloadFile, unzippedFolderPath);
-
             emitDownloadStatusEvent(context, CodePushConstants.UNZIPPED_SUCCESS);
-            FileUtils.deleteFileOrFolderSilently(downloadFile);
-        
-            if (compressionMode == CodePushCompressionMode.BROTLI) {
-                String decompressedFolderPath = getDecompressedFolderPath();
-
-                CodePushUtils.log("Decompressing brotli compressed files at path: " + decompressedFolderPath);
-                FileUtils.decompressFiles(unzippedFolderPath, decompressedFolderPath);
-                CodePushUtils.log("Decompressed brotli compressed files at path: " + decompressedFolderPath);
-                FileUtils.deleteFileAtPathSilently(unzippedFolderPath);
-                unzippedFolderPath = decompressedFolderPath;
+
+            if (compressionMode != CodePushCompressionMode.DEFAULT) {
+                // Compressed files were already decoded while unzipping.
                 emitDownloadStatusEvent(context, CodePushConstants.DECOMPRESSED_SUCCESS);
             }
 
+            CodePushHashCache hashCache = loadHashCache();
+
             // Merge contents with current update based on the manifest
             String diffManifestFilePath = CodePushUtils.appendPathComponent(unzippedFolderPath,
                     CodePushConstants.DIFF_MANIFEST_FILE_NAME);
@@ -323,17 +327,34 @@ public class CodePushUpdateManager {
             CodePushUtils.log("isDiffUpdate  :: " + isDiffUpdate);
             if (isDiffUpdate) {
                 String currentPackageFolderPath = getCurrentPackageFolderPath();
-                CodePushUpdateUtils.copyNecessaryFilesFromCurrentPackage(diffManifestFilePath, currentPackageFolderPath, newUpdateFolderPath);
+                Map<String, String> packageHashes = new HashMap<>();
+                CodePushUpdateUtils.copyNecessaryFilesFromCurrentPackage(diffManifestFilePath, currentPackageFolderPath, newUpdateFolderPath, packageHashes, hashCache);
                 File diffManifestFile = new File(diffManifestFilePath);
                 diffManifestFile.delete();
+                fileHashes.remove(CodePushConstants.DIFF_MANIFEST_FILE_NAME);
+                // Files from the diff overwrite the ones kept from the current package.
+                packageHashes.putAll(fileHashes);
+                fileHashes = packageHashes;
             }
 
 
-            FileUtils.copyDirectoryContents(unzippedFolderPath, newUpdateFolderPath);
+            FileUtils.moveDirectoryContents(unzippedFolderPath, newUpdateFolderPath);
             FileUtils.deleteFileAtPathSilently(unzippedFolderPath);
 
+            File patchManifestFile = new File(newUpdateFolderPath, CodePushConstants.PATCH_MANIFEST_FILE_NAME);
+            if (patchManifestFile.exists()) {
+                String currentPackageFolderPath = getCurrentPackageFolderPath();
+                if (currentPackageFolderPath == null) {
+                    throw new CodePushInvalidUpdateException("Update is invalid - File patches were shipped but there is no current package to apply them to.");
+                }
+                new CodePushPatchApplier().apply(patchManifestFile, currentPackageFolderPath, newUpdateFolderPath, fileHashes);
+                patchManifestFile.delete();
+                fileHashes.remove(CodePushConstants.PATCH_MANIFEST_FILE_NAME);
+                emitDownloadStatusEvent(context, CodePushConstants.PATCH_APPLIED_SUCCESS);
+            }
+
             if (isBundlePatchingEnabled) {
-                applyPatch(newUpdateFolderPath, context);
+                applyPatch(newUpdateFolderPath, context, binaryModifiedTime, patchBasePackageHash, expectedBundleFileName, patchProgress, fileHashes);
             }
 
             // For zip updates, we need to find the relative path to the jsBundle and save it in the
@@ -347,6 +368,13 @@ public class CodePushUpdateManager {
                     File metadataFileFromOldUpdate = new File(newUpdateMetadataPath);
                     metadataFileFromOldUpdate.delete();
                 }
+                fileHashes.remove(CodePushConstants.PACKAGE_FILE_NAME);
+
+                String bundleHash = fileHashes.get(relativeBundlePath);
+                if (bundleHash == null) {
+                    bundleHash = CodePushUpdateUtils.computeFileHash(new File(newUpdateFolderPath, relativeBundlePath));
+                }
+                CodePushUtils.setJSONValueForKey(updatePackage, CodePushConstants.BUNDLE_HASH_KEY, bundleHash);
 
                 if (isDiffUpdate) {
                     CodePushUtils.log("Applying diff update.");
@@ -361,7 +389,7 @@ public class CodePushUpdateManager {
 
                 if (isSignatureVerificationEnabled) {
                     if (isSignatureAppearedInBundle) {
-                        CodePushUpdateUtils.verifyFolderHash(newUpdateFolderPath, newUpdateHash);
+                        verifyFolderHash(newUpdateFolderPath, newUpdateHash, fileHashes);
                         CodePushUpdateUtils.verifyUpdateSignature(newUpdateFolderPath, newUpdateHash, stringPublicKey);
                     } else {
                         throw new CodePushInvalidUpdateException(
@@ -377,24 +405,35 @@ public class CodePushUpdateManager {
                                 "Warning! JWT signature exists in codepush update but code integrity check couldn't be performed because there is no public key configured. " +
                                 "Please ensure that public key is properly configured within your application."
                         );
-                        CodePushUpdateUtils.verifyFolderHash(newUpdateFolderPath, newUpdateHash);
+                        verifyFolderHash(newUpdateFolderPath, newUpdateHash, fileHashes);
                     } else {
                         if (isDiffUpdate) {
-                            CodePushUpdateUtils.verifyFolderHash(newUpdateFolderPath, newUpdateHash);
+                            verifyFolderHash(newUpdateFolderPath, newUpdateHash, fileHashes);
                         }
                     }
                 }
 
+                if (CodePush.isContentStoreEnabled()) {
+                    new CodePushContentStore(getContentStorePath()).addPackageFiles(newUpdateFolderPath, fileHashes);
+                }
+
+                if (hashCache != null) {
+                    saveFileHashes(hashCache, newUpdateFolderPath, fileHashes);
+                }
+
                 CodePushUtils.setJSONValueForKey(updatePackage, CodePushConstants.RELATIVE_BUNDLE_PATH_KEY, relativeBundlePath);
             }
         } else {
             if (isBundlePatchingEnabled) {
                 CodePushUtils.log("Patch Process: Moving single file from " + downloadFile.getAbsolutePath() + " to " + newUpdateFolderPath + " with name " + CodePushConstants.PATCH_BUNDLE_FILE_NAME);
                 FileUtils.moveFile(downloadFile, newUpdateFolderPath, CodePushConstants.PATCH_BUNDLE_FILE_NAME);
-                applyPatch(newUpdateFolderPath, context);
+                String bundleHash = applyPatch(newUpdateFolderPath, context, binaryModifiedTime, patchBasePackageHash, expectedBundleFileName, patchProgress, null);
+                CodePushUtils.setJSONValueForKey(updatePackage, CodePushConstants.BUNDLE_HASH_KEY, bundleHash);
             } else {
                 // File is a jsbundle, move it to a folder with the packageHash as its name
                 FileUtils.moveFile(downloadFile, newUpdateFolderPath, expectedBundleFileName);
+                String bundleHash = CodePushUpdateUtils.computeFileHash(new File(newUpdateFolderPath, expectedBundleFileName));
+                CodePushUtils.setJSONValueForKey(updatePackage, CodePushConstants.BUNDLE_HASH_KEY, bundleHash);
             }
         }
 
@@ -402,16 +441,351 @@ public class CodePushUpdateManager {
         CodePushUtils.writeJsonToFile(updatePackage, newUpdateMetadataPath);
     }
 
-    private void applyPatch(String newUpdateFolderPath, ReactApplicationContext context) throws CodePushUnknownException, CodePushInvalidUpdateException {
+    private CodePushHashCache loadHashCache() {
+        if (CodePush.isStrictHashVerificationEnabled()) {
+            return null;
+        }
+        return CodePushHashCache.load(getCodePushPath());
+    }
+
+    private void saveFileHashes(CodePushHashCache hashCache, String packageFolderPath, Map<String, String> fileHashes) {
+        for (Map.Entry<String, String> fileHash : fileHashes.entrySet()) {
+            hashCache.put(new File(packageFolderPath, fileHash.getKey()), fileHash.getValue());
+        }
+        try {
+            hashCache.save();
+        } catch (IOException e) {
+            CodePushUtils.log("Unable to save hash cache: " + e.getMessage());
+        }
+    }
+
+    private void verifyFolderHash(String folderPath, String expectedHash, Map<String, String> fileHashes) {
+        try {
+            CodePushUpdateUtils.verifyFolderHash(folderPath, expectedHash, fileHashes);
+        } catch (CodePushInvalidUpdateException e) {
+            // A stale cache entry must not fail the retry as well.
+            CodePushHashCache.invalidate(getCodePushPath());
+            throw e;
+        }
+    }
+
+    private Map<String, String> getDownloadRequestHeaders(ReactApplicationContext context, boolean acceptCompressed) {
+        Map<String, String> headers = new HashMap<>();
+        String packageName = context.getPackageName();
+        headers.put(CodePushConstants.PACKAGE_NAME_HEADER_KEY, packageName);
+        CodePushUtils.log("Setting " + CodePushConstants.PACKAGE_NAME_HEADER_KEY + " header: " + packageName);
+
+        // Setting the header ourselves also stops the transport from decoding transparently,
+        // so that the body is counted as it was sent.
+        headers.put("Accept-Encoding", acceptCompressed ? "br, gzip" : "identity");
+        return headers;
+    }
+
+    private static boolean isContentEncoded(String contentEncoding) {
+        return contentEncoding != null && !contentEncoding.equalsIgnoreCase("identity");
+    }
+
+    private static InputStream decodeContent(InputStream body, String contentEncoding) throws IOException {
+        if (!isContentEncoded(contentEncoding)) {
+            return body;
+        } else if (contentEncoding.equalsIgnoreCase("gzip")) {
+            return new GZIPInputStream(body, CodePushConstants.DOWNLOAD_BUFFER_SIZE);
+        } else if (contentEncoding.equalsIgnoreCase("br")) {
+            return CodePushBrotliDecoder.newInputStream(body);
+        }
+        throw new CodePushUnknownException("Unsupported Content-Encoding \"" + contentEncoding + "\"");
+    }
+
+    // The size can only be checked against a known Content-Length. Without one, an encoded body
+    // is still checked by its decoder, which fails on a truncated stream.
+    private static void verifyReceivedBytes(long totalBytes, long receivedBytes, boolean isEncoded) {
+        if ((totalBytes >= 0 || !isEncoded) && totalBytes != receivedBytes) {
+            throw new CodePushUnknownException("Received " + receivedBytes + " bytes, expected " + totalBytes);
+        }
+    }
+
+    // Feeds the response body straight into the zip reader so that no download.zip is written.
+    // Returns null if the payload turned out not to be a zip, in which case it has been saved to
+    // the download file instead.
+    private CodePushCompressionMode streamUpdateFromUrl(ReactApplicationContext context, String downloadUrlString,
+                                                       String unzippedFolderPath, Map<String, String> fileHashes,
+                                                       int decompressionThreadCount, DownloadProgressCallback progressCallback) throws IOException {
+        CodePushHttpTransport.Response response = null;
+        BufferedInputStream bin = null;
+        try {
+            response = CodePush.getHttpTransport().get(downloadUrlString,
+                    getDownloadRequestHeaders(context, CodePush.isCompressedDownloadsEnabled()));
+            long totalBytes = response.getContentLength();
+            String contentEncoding = response.getHeader("Content-Encoding");
+            CodePushUtils.log("totalBytes received in bytes:: "+ totalBytes + ", encoding :: " + contentEncoding);
+            CountingInputStream wireStream = new CountingInputStream(response.getBody());
+            ProgressInputStream progressStream = new ProgressInputStream(decodeContent(wireStream, contentEncoding), wireStream, totalBytes, progressCallback);
+            bin = new BufferedInputStream(progressStream, CodePushConstants.DOWNLOAD_BUFFER_SIZE);
+
+            byte[] header = new byte[4];
+            bin.mark(header.length);
+            int headerLength = 0;
+            int numBytesRead;
+            while (headerLength < header.length && (numBytesRead = bin.read(header, headerLength, header.length - headerLength)) > 0) {
+                headerLength += numBytesRead;
+            }
+            bin.reset();
+            boolean isZip = headerLength == header.length && ByteBuffer.wrap(header).getInt() == 0x504b0304;
+
+            CodePushCompressionMode compressionMode = null;
+            if (isZip) {
+                CodePushUtils.log("Unzipping while downloading");
+                compressionMode = FileUtils.unzipStream(bin, unzippedFolderPath, fileHashes, decompressionThreadCount);
+                // The zip reader stops at the central directory, drain it so that the size check holds.
+                byte[] data = new byte[CodePushConstants.DOWNLOAD_BUFFER_SIZE];
+                while (bin.read(data) >= 0) ;
+            } else {
+                File downloadFolder = new File(getCodePushPath());
+                downloadFolder.mkdirs();
+                FileOutputStream fos = new FileOutputStream(new File(downloadFolder, CodePushConstants.DOWNLOAD_FILE_NAME));
+                try {
+                    byte[] data = new byte[CodePushConstants.DOWNLOAD_BUFFER_SIZE];
+                    while ((numBytesRead = bin.read(data)) >= 0) {
+                        fos.write(data, 0, numBytesRead);
+                    }
+                } finally {
+                    fos.close();
+                }
+            }
+
+            verifyReceivedBytes(totalBytes, wireStream.getCount(), isContentEncoded(contentEncoding));
+            return compressionMode;
+        } catch (MalformedURLException e) {
+            throw new CodePushMalformedDataException(downloadUrlString, e);
+        } finally {
+            try {
+                if (bin != null) bin.close();
+                if (response != null) response.close();
+            } catch (IOException e) {
+                throw new CodePushUnknownException("Error closing IO resources.", e);
+            }
+        }
+    }
+
+    private File downloadUpdateFile(ReactApplicationContext context, String downloadUrlString,
+                                    DownloadProgressCallback progressCallback) throws IOException {
+        File downloadFolder = new File(getCodePushPath());
+        downloadFolder.mkdirs();
+        File downloadFile = new File(downloadFolder, CodePushConstants.DOWNLOAD_FILE_NAME);
+        CodePushUtils.log("downloadFolder path :: "+ getCodePushPath());
+
+        int connectionCount = CodePush.getDownloadConnectionCount();
+        if (connectionCount > 1) {
+            CodePushSegmentedDownloader segmentedDownloader = new CodePushSegmentedDownloader(CodePush.getHttpTransport(),
+                    downloadUrlString, getDownloadRequestHeaders(context, false), connectionCount);
+            try {
+                if (segmentedDownloader.download(downloadFile, progressCallback)) {
+                    return downloadFile;
+                }
+            } catch (MalformedURLException e) {
+                throw new CodePushMalformedDataException(downloadUrlString, e);
+            }
+        }
+
+        if (!CodePush.isResumableDownloadsEnabled()) {
+            downloadFileFromUrl(context, downloadUrlString, downloadFile, null, progressCallback);
+            return downloadFile;
+        }
+
+        String checkpointFilePath = getDownloadCheckpointFilePath();
+        int attempt = 0;
+        while (true) {
+            CodePushDownloadCheckpoint checkpoint = CodePushDownloadCheckpoint.read(checkpointFilePath);
+            if (checkpoint == null || !checkpoint.canResume(downloadUrlString, downloadFile)) {
+                checkpoint = new CodePushDownloadCheckpoint(downloadUrlString);
+            }
+
+            try {
+                downloadFileFromUrl(context, downloadUrlString, downloadFile, checkpoint, progressCallback);
+                FileUtils.deleteFileAtPathSilently(checkpointFilePath);
+                return downloadFile;
+            } catch (IOException e) {
+                // HTTP errors are thrown as CodePushUnknownException, so only I/O and network failures get here.
+                attempt++;
+                if (attempt >= CodePushConstants.DOWNLOAD_MAX_RESUME_ATTEMPTS) {
+                    throw e;
+                }
+                long backoffMillis = CodePushConstants.DOWNLOAD_RESUME_BACKOFF_MILLIS << (attempt - 1);
+                CodePushUtils.log("Download interrupted after attempt " + attempt + ", resuming in " + backoffMillis + " ms: " + e.getMessage());
+                try {
+                    Thread.sleep(backoffMillis);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    // Downloads the file at downloadUrlString into downloadFile. When a checkpoint is given, the
+    // download continues from its committed offset (if the server honours the range) and the
+    // checkpoint is persisted every DOWNLOAD_CHECKPOINT_INTERVAL bytes.
+    private void downloadFileFromUrl(ReactApplicationContext context, String downloadUrlString, File downloadFile,
+                                     CodePushDownloadCheckpoint checkpoint,
+                                     DownloadProgressCallback progressCallback) throws IOException {
+        CodePushHttpTransport.Response response = null;
+        BufferedInputStream bin = null;
+        FileOutputStream fos = null;
+        BufferedOutputStream bout = null;
+
+        try {
+            // A resumed range must be in the identity encoding.
+            boolean acceptCompressed = checkpoint == null && CodePush.isCompressedDownloadsEnabled();
+            Map<String, String> requestHeaders = getDownloadRequestHeaders(context, acceptCompressed);
+            long resumeOffset = checkpoint != null ? checkpoint.getBytesCommitted() : 0;
+            if (resumeOffset > 0) {
+                requestHeaders.put("Range", "bytes=" + resumeOffset + "-");
+                requestHeaders.put("If-Range", checkpoint.getValidator());
+            }
+
+            response = CodePush.getHttpTransport().get(downloadUrlString, requestHeaders);
+            int statusCode = response.getStatusCode();
+            if (resumeOffset > 0 && statusCode == HTTP_RANGE_NOT_SATISFIABLE) {
+                // The partial file is longer than the package now on the server, start over.
+                FileUtils.deleteFileAtPathSilently(getDownloadCheckpointFilePath());
+                throw new IOException("Server could not resume the download at byte " + resumeOffset + ".");
+            }
+            if (statusCode < 200 || statusCode >= 300) {
+                throw new CodePushUnknownException("Server returned HTTP " + statusCode + " for " + downloadUrlString);
+            }
+            if (resumeOffset > 0 && statusCode == HttpURLConnection.HTTP_PARTIAL) {
+                long[] contentRange = CodePushDownloadCheckpoint.parseContentRange(response.getHeader("Content-Range"));
+                if (contentRange == null || contentRange[0] != resumeOffset) {
+                    // Appending a range that doesn't start where the file ends would corrupt it.
+                    FileUtils.deleteFileAtPathSilently(getDownloadCheckpointFilePath());
+                    throw new IOException("Server resumed the download with Content-Range \""
+                            + response.getHeader("Content-Range") + "\", expected it to start at byte " + resumeOffset + ".");
+                }
+            }
+            String contentEncoding = response.getHeader("Content-Encoding");
+            boolean isEncoded = isContentEncoded(contentEncoding);
+            CountingInputStream wireStream = new CountingInputStream(response.getBody());
+            bin = new BufferedInputStream(decodeContent(wireStream, contentEncoding), CodePushConstants.DOWNLOAD_BUFFER_SIZE);
+
+            if (resumeOffset > 0 && statusCode != HttpURLConnection.HTTP_PARTIAL) {
+                // The server ignored the range or the package changed, start from scratch.
+                CodePushUtils.log("Server did not resume the download, restarting from the first byte.");
+                resumeOffset = 0;
+            }
+
+            long totalBytes = response.getContentLength();
+            if (totalBytes >= 0) {
+                totalBytes += resumeOffset;
+            }
+            long receivedBytes = resumeOffset;
+            CodePushUtils.log("totalBytes received in bytes:: "+ totalBytes + ", resuming at :: " + resumeOffset + ", encoding :: " + contentEncoding);
+
+            if (checkpoint != null) {
+                // Drop anything past the committed offset, it may be a torn write from the last attempt.
+                RandomAccessFile partialFile = new RandomAccessFile(downloadFile, "rw");
+                try {
+                    partialFile.setLength(resumeOffset);
+                } finally {
+                    partialFile.close();
+                }
+                checkpoint.setValidators(response.getHeader("ETag"), response.getHeader("Last-Modified"));
+                checkpoint.setBytesCommitted(resumeOffset);
+            }
+
+            fos = new FileOutputStream(downloadFile, resumeOffset > 0);
+            bout = new BufferedOutputStream(fos, CodePushConstants.DOWNLOAD_BUFFER_SIZE);
+            byte[] data = new byte[CodePushConstants.DOWNLOAD_BUFFER_SIZE];
+
+            long nextCheckpointBytes = receivedBytes + CodePushConstants.DOWNLOAD_CHECKPOINT_INTERVAL;
+            int numBytesRead = 0;
+            while ((numBytesRead = bin.read(data, 0, CodePushConstants.DOWNLOAD_BUFFER_SIZE)) >= 0) {
+                receivedBytes += numBytesRead;
+                bout.write(data, 0, numBytesRead);
+                progressCallback.call(totalBytes, isEncoded ? wireStream.getCount() : receivedBytes, receivedBytes);
+
+                if (checkpoint != null && receivedBytes >= nextCheckpointBytes && receivedBytes < totalBytes) {
+                    bout.flush();
+                    fos.getFD().sync();
+                    checkpoint.setBytesCommitted(receivedBytes);
+                    checkpoint.write(getDownloadCheckpointFilePath());
+                    nextCheckpointBytes = receivedBytes + CodePushConstants.DOWNLOAD_CHECKPOINT_INTERVAL;
+                }
+            }
+
+            if (checkpoint != null && totalBytes > receivedBytes) {
+                // Treat a short body like a dropped connection so that the caller can resume it.
+                throw new EOFException("Connection closed after " + receivedBytes + " bytes, expected " + totalBytes);
+            }
+
+            verifyReceivedBytes(totalBytes, isEncoded ? wireStream.getCount() : receivedBytes, isEncoded);
+        } catch (MalformedURLException e) {
+            throw new CodePushMalformedDataException(downloadUrlString, e);
+        } finally {
+            try {
+                if (bout != null) bout.close();
+                if (fos != null) fos.close();
+                if (bin != null) bin.close();
+                if (response != null) response.close();
+            } catch (IOException e) {
+                throw new CodePushUnknownException("Error closing IO resources.", e);
+            }
+        }
+    }
+
+    // The patch is applied to the bundle of the package patchBasePackageHash, or to the binary bundle
+    // if it is null. If fileHashes is not null, the entry of the patch file is replaced with the patched
+    // bundle. Returns the hash of the patched bundle.
+    private String applyPatch(String newUpdateFolderPath, ReactApplicationContext context, String binaryModifiedTime,
+                              String patchBasePackageHash, String expectedBundleFileName,
+                              PatchProgressReporter patchProgress, Map<String, String> fileHashes) throws CodePushUnknownException, CodePushInvalidUpdateException {
         CodePushUtils.log("Patch Process: Starting patch process.");
 
         String findPatchBundleRelativePath = checkPatchFileExistence(newUpdateFolderPath);
 
-        File binaryBundle = copyOriginalBundle(context);
+        File baseBundle = patchBasePackageHash != null
+                ? getPatchBaseBundle(patchBasePackageHash, expectedBundleFileName)
+                : getOriginalBundle(context, binaryModifiedTime);
+
+        String bundleHash = applyPatchToBundle(newUpdateFolderPath, findPatchBundleRelativePath, baseBundle, patchProgress, context,
+                fileHashes);
 
-        applyPatchToBundle(newUpdateFolderPath, findPatchBundleRelativePath, binaryBundle, context);
-        
         CodePushUtils.log("Patch Process: Patch application completed.");
+        return bundleHash;
+    }
+
+    // Patches made against a package only apply to that exact bundle, so it must be the running
+    // package and its bundle must still have the hash recorded when it was installed.
+    private File getPatchBaseBundle(String patchBasePackageHash, String expectedBundleFileName) throws CodePushInvalidUpdateException {
+        String currentPackageHash = getCurrentPackageHash();
+        if (!patchBasePackageHash.equals(currentPackageHash)) {
+            CodePushUtils.log("Patch Process: Patch base " + patchBasePackageHash + " is not the current package " + currentPackageHash);
+            throw new CodePushInvalidUpdateException("Update is invalid - The patch was made against package \"" + patchBasePackageHash + "\", which is not the current package.");
+        }
+
+        JSONObject currentPackage = getCurrentPackage();
+        String bundlePath = getCurrentPackageBundlePath(expectedBundleFileName);
+        File baseBundle = bundlePath != null ? new File(bundlePath) : null;
+        if (currentPackage == null || baseBundle == null || !baseBundle.isFile()) {
+            throw new CodePushInvalidUpdateException("Update is invalid - The bundle of the patch base package \"" + patchBasePackageHash + "\" could not be found.");
+        }
+
+        String expectedHash = currentPackage.optString(CodePushConstants.BUNDLE_HASH_KEY, null);
+        if (expectedHash == null) {
+            throw new CodePushInvalidUpdateException("Update is invalid - The bundle hash of the patch base package \"" + patchBasePackageHash + "\" is unknown.");
+        }
+
+        CodePushHashCache hashCache = loadHashCache();
+        String bundleHash = hashCache != null ? hashCache.getHash(baseBundle) : null;
+        if (bundleHash == null) {
+            bundleHash = CodePushUpdateUtils.computeFileHash(baseBundle);
+        }
+        if (!expectedHash.equals(bundleHash)) {
+            CodePushUtils.log("Patch Process: Expected base bundle hash " + expectedHash + ", actual hash " + bundleHash);
+            throw new CodePushInvalidUpdateException("The patch base bundle failed the data integrity check.");
+        }
+
+        CodePushUtils.log("Patch Process: Patching against the bundle of package " + patchBasePackageHash);
+        return baseBundle;
     }
 
     private String checkPatchFileExistence(String newUpdateFolderPath) throws CodePushInvalidUpdateException {
@@ -425,7 +799,9 @@ public class CodePushUpdateManager {
         return findPatchBundleRelativePath;
     }
 
-    private File copyOriginalBundle(ReactApplicationContext context) throws CodePushUnknownException {
+    // The bundle shipped in the APK is extracted once and kept until the APK changes, so that
+    // patch updates don't need to copy it out of the assets every time.
+    private File getOriginalBundle(ReactApplicationContext context, String binaryModifiedTime) throws CodePushUnknownException {
         File binaryBundleDir = new File(getCodePushPath(), CodePushConstants.BINARY_BUNDLE_DIR);
         if (!binaryBundleDir.exists()) {
             CodePushUtils.log("Patch Process: Creating binary bundle directory.");
@@ -433,57 +809,126 @@ public class CodePushUpdateManager {
         }
 
         File binaryBundle = new File(binaryBundleDir, CodePushConstants.DEFAULT_JS_BUNDLE_NAME);
+        File markerFile = new File(binaryBundleDir, CodePushConstants.BINARY_BUNDLE_MARKER_FILE_NAME);
+        if (isOriginalBundleCurrent(binaryBundle, markerFile, binaryModifiedTime)) {
+            CodePushUtils.log("Patch Process: Reusing the extracted original bundle.");
+            return binaryBundle;
+        }
+
         // This is done to prevent using old binary bundle in case of new apk updates.
+        markerFile.delete();
         if (binaryBundle.exists()) {
             CodePushUtils.log("Patch Process: Deleting existing binary bundle.");
             binaryBundle.delete();
         }
-        if (!binaryBundle.exists()) {
-            CodePushUtils.log("Patch Process: Copying original bundle from assets.");
-            InputStream input = null;
-            OutputStream output = null;
+
+        CodePushUtils.log("Patch Process: Copying original bundle from assets.");
+        InputStream input = null;
+        FileOutputStream output = null;
+        AssetFileDescriptor assetFileDescriptor = null;
+        try {
+            output = new FileOutputStream(binaryBundle);
             try {
+                // Uncompressed assets can be copied straight from the APK instead of through the asset stream.
+                assetFileDescriptor = context.getAssets().openFd(CodePushConstants.DEFAULT_JS_BUNDLE_NAME);
+                // A stream made from a FileDescriptor doesn't own it on Android, assetFileDescriptor
+                // still closes it.
+                try (FileInputStream assetStream = new FileInputStream(assetFileDescriptor.getFileDescriptor());
+                     FileChannel assetChannel = assetStream.getChannel()) {
+                    FileUtils.transfer(assetChannel, assetFileDescriptor.getStartOffset(), assetFileDescriptor.getLength(),
+                            output.getChannel());
+                }
+            } catch (FileNotFoundException e) {
                 input = context.getAssets().open(CodePushConstants.DEFAULT_JS_BUNDLE_NAME);
-                output = new FileOutputStream(binaryBundle);
-
-                byte[] buffer = new byte[1024];
+                byte[] buffer = new byte[CodePushConstants.DOWNLOAD_BUFFER_SIZE];
                 int read;
                 while ((read = input.read(buffer)) != -1) {
                     output.write(buffer, 0, read);
                 }
-            } catch (Exception e) {
-                CodePushUtils.log("Patch Process: Failed to copy original bundle with error: " + e.getMessage());
-                throw new CodePushUnknownException("Failed to copy original bundle shipped within APK to " + binaryBundle.getAbsolutePath() + " with error: " + e.getMessage());
-            } finally {
-                try {
-                    if (input != null) {
-                        input.close();
-                    }
-                    if (output != null) {
-                        output.close();
-                    }
-                } catch (IOException e) {
-                    CodePushUtils.log("Patch Process: Failed to close streams: " + e.getMessage());
+            }
+            output.close();
+            output = null;
+
+            JSONObject marker = new JSONObject();
+            CodePushUtils.setJSONValueForKey(marker, CodePushConstants.BINARY_MODIFIED_TIME_KEY, binaryModifiedTime);
+            CodePushUtils.setJSONValueForKey(marker, BINARY_BUNDLE_SIZE_KEY, binaryBundle.length());
+            CodePushUtils.setJSONValueForKey(marker, BINARY_BUNDLE_MODIFIED_TIME_KEY, binaryBundle.lastModified());
+            CodePushUtils.setJSONValueForKey(marker, BINARY_BUNDLE_HASH_KEY, CodePushUpdateUtils.computeFileHash(binaryBundle));
+            CodePushUtils.writeJsonToFile(marker, markerFile.getAbsolutePath());
+        } catch (Exception e) {
+            CodePushUtils.log("Patch Process: Failed to copy original bundle with error: " + e.getMessage());
+            binaryBundle.delete();
+            throw new CodePushUnknownException("Failed to copy original bundle shipped within APK to " + binaryBundle.getAbsolutePath() + " with error: " + e.getMessage());
+        } finally {
+            try {
+                if (input != null) {
+                    input.close();
+                }
+                if (output != null) {
+                    output.close();
+                }
+                if (assetFileDescriptor != null) {
+                    assetFileDescriptor.close();
                 }
+            } catch (IOException e) {
+                CodePushUtils.log("Patch Process: Failed to close streams: " + e.getMessage());
             }
         }
         return binaryBundle;
     }
 
-    private void applyPatchToBundle(String newUpdateFolderPath, String findPatchBundleRelativePath, File binaryBundle, ReactApplicationContext context) throws CodePushUnknownException {
+    // The extracted bundle is current if it was extracted from this APK and hasn't changed since.
+    // It is only hashed again once the cheaper checks pass. That still costs much less than
+    // extracting it, and a corrupted base would make every patch fail.
+    private static boolean isOriginalBundleCurrent(File binaryBundle, File markerFile, String binaryModifiedTime) {
+        if (binaryModifiedTime == null || !binaryBundle.isFile() || !markerFile.isFile()) {
+            return false;
+        }
+
+        try {
+            JSONObject marker = CodePushUtils.getJsonObjectFromFile(markerFile.getAbsolutePath());
+            return binaryModifiedTime.equals(marker.optString(CodePushConstants.BINARY_MODIFIED_TIME_KEY, null))
+                    && binaryBundle.length() == marker.optLong(BINARY_BUNDLE_SIZE_KEY, -1)
+                    && binaryBundle.lastModified() == marker.optLong(BINARY_BUNDLE_MODIFIED_TIME_KEY, -1)
+                    && CodePushUpdateUtils.computeFileHash(binaryBundle).equals(marker.optString(BINARY_BUNDLE_HASH_KEY, null));
+        } catch (IOException | CodePushMalformedDataException | CodePushUnknownException e) {
+            CodePushUtils.log("Patch Process: Ignoring the extracted original bundle: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private String applyPatchToBundle(String newUpdateFolderPath, String findPatchBundleRelativePath, File baseBundle,
+                                      PatchProgressReporter patchProgress, ReactApplicationContext context, Map<String, String> fileHashes) throws CodePushUnknownException {
         try {
             File patchBundleFile = new File(newUpdateFolderPath, findPatchBundleRelativePath);
             CodePushUtils.log("Patch Process: Applying patch from " + patchBundleFile.getAbsolutePath());
             String dir = patchBundleFile.getParent();
             File modifiedBundleFile = new File(dir, CodePushConstants.DEFAULT_JS_BUNDLE_NAME);
-            int result = bsPatchFile(binaryBundle.getAbsolutePath(), modifiedBundleFile.getAbsolutePath(), patchBundleFile.getAbsolutePath());
+            // The bundle may be a hard link shared with another package, never write through it.
+            modifiedBundleFile.delete();
+            int result;
+            if (CodePushSectionedPatch.isSectionedPatch(patchBundleFile)) {
+                CodePushUtils.log("Patch Process: Applying sectioned patch.");
+                result = CodePushSectionedPatch.bsPatchFile(baseBundle.getAbsolutePath(), modifiedBundleFile.getAbsolutePath(),
+                        patchBundleFile.getAbsolutePath(), CodePushConstants.PATCH_WINDOW_SIZE, patchProgress);
+            } else {
+                result = bsPatchFile(baseBundle.getAbsolutePath(), modifiedBundleFile.getAbsolutePath(), patchBundleFile.getAbsolutePath(), patchProgress, true);
+            }
             if (result == 0) {
                 emitDownloadStatusEvent(context, CodePushConstants.PATCH_APPLIED_SUCCESS);
                 CodePushUtils.log("Patch Process: Patching successful.");
 
                 // Cleanup
                 FileUtils.deleteFileAtPathSilently(patchBundleFile.getAbsolutePath());
-                FileUtils.deleteDirectoryAtPath(binaryBundle.getParent());
+                String bundleHash = CodePushUpdateUtils.computeFileHash(modifiedBundleFile);
+                if (fileHashes != null) {
+                    fileHashes.remove(FileUtils.getRelativePath(newUpdateFolderPath, patchBundleFile));
+                    fileHashes.put(FileUtils.getRelativePath(newUpdateFolderPath, modifiedBundleFile), bundleHash);
+                }
+                return bundleHash;
+            } else if (result == CodePushBsPatch.BSPATCH_ERROR_CANCELLED && patchProgress.isStale()) {
+                CodePushUtils.log("Patch Process: Patching cancelled.");
+                throw new CodePushUnknownException("Patching was cancelled because a newer update is being downloaded");
             } else {
                 CodePushUtils.log("Patch Process: Patching failed.");
                 throw new CodePushUnknownException("Patching failed");
@@ -525,6 +970,16 @@ public class CodePushUpdateManager {
 
         CodePushUtils.setJSONValueForKey(info, CodePushConstants.CURRENT_PACKAGE_KEY, packageHash);
         updateCurrentPackageInfo(info);
+        collectContentStoreGarbage();
+    }
+
+    // Objects stored while the content store was enabled are still collected once it is disabled,
+    // but nothing is done for apps that never enabled it.
+    private void collectContentStoreGarbage() {
+        String contentStorePath = getContentStorePath();
+        if (CodePush.isContentStoreEnabled() || new File(contentStorePath).exists()) {
+            new CodePushContentStore(contentStorePath).collectGarbage();
+        }
     }
 
     public void rollbackPackage() {
@@ -535,18 +990,17 @@ public class CodePushUpdateManager {
         CodePushUtils.setJSONValueForKey(info, CodePushConstants.CURRENT_PACKAGE_KEY, info.optString(CodePushConstants.PREVIOUS_PACKAGE_KEY, null));
         CodePushUtils.setJSONValueForKey(info, CodePushConstants.PREVIOUS_PACKAGE_KEY, null);
         updateCurrentPackageInfo(info);
+        collectContentStoreGarbage();
     }
 
     public void downloadAndReplaceCurrentBundle(String remoteBundleUrl, String bundleFileName) throws IOException {
-        URL downloadUrl;
-        HttpURLConnection connection = null;
+        CodePushHttpTransport.Response response = null;
         BufferedInputStream bin = null;
         FileOutputStream fos = null;
         BufferedOutputStream bout = null;
         try {
-            downloadUrl = new URL(remoteBundleUrl);
-            connection = (HttpURLConnection) (downloadUrl.openConnection());
-            bin = new BufferedInputStream(connection.getInputStream());
+            response = CodePush.getHttpTransport().get(remoteBundleUrl, new HashMap<String, String>());
+            bin = new BufferedInputStream(response.getBody());
             File downloadFile = new File(getCurrentPackageBundlePath(bundleFileName));
             downloadFile.delete();
             fos = new FileOutputStream(downloadFile);
@@ -563,7 +1017,7 @@ public class CodePushUpdateManager {
                 if (bout != null) bout.close();
                 if (fos != null) fos.close();
                 if (bin != null) bin.close();
-                if (connection != null) connection.disconnect();
+                if (response != null) response.close();
             } catch (IOException e) {
                 throw new CodePushUnknownException("Error closing IO resources.", e);
             }
@@ -573,4 +1027,79 @@ public class CodePushUpdateManager {
     public void clearUpdates() {
         FileUtils.deleteDirectoryAtPath(getCodePushPath());
     }
+
+    // Reports the bytes read through it, along with the bytes the wire stream below has read.
+    private static class ProgressInputStream extends FilterInputStream {
+        private final CountingInputStream mWireStream;
+        private final long mTotalBytes;
+        private final DownloadProgressCallback mProgressCallback;
+        private long mDecompressedBytes;
+
+        ProgressInputStream(InputStream in, CountingInputStream wireStream, long totalBytes, DownloadProgressCallback progressCallback) {
+            super(in);
+            mWireStream = wireStream;
+            mTotalBytes = totalBytes;
+            mProgressCallback = progressCallback;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                onBytesRead(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int numBytesRead = super.read(buffer, offset, length);
+            if (numBytesRead > 0) {
+                onBytesRead(numBytesRead);
+            }
+            return numBytesRead;
+        }
+
+        private void onBytesRead(int numBytesRead) {
+            mDecompressedBytes += numBytesRead;
+            mProgressCallback.call(mTotalBytes, mWireStream.getCount(), mDecompressedBytes);
+        }
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        private long mCount;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                mCount++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int numBytesRead = super.read(buffer, offset, length);
+            if (numBytesRead > 0) {
+                mCount += numBytesRead;
+            }
+            return numBytesRead;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            mCount += skipped;
+            return skipped;
+        }
+
+        long getCount() {
+            return mCount;
+        }
+    }
 }
@@ -28,7 +28,9 @@ import java.security.PublicKey;
 import java.security.spec.X509EncodedKeySpec;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 public class CodePushUpdateUtils {
 
@@ -48,40 +50,15 @@ public class CodePushUpdateUtils {
                 || relativeFilePath.endsWith("/" + CODEPUSH_METADATA);
     }
 
-    private static void addContentsOfFolderToManifest(String folderPath, String pathPrefix, ArrayList<String> manifest) {
-        File folder = new File(folderPath);
-        File[] folderFiles = folder.listFiles();
-        for (File file : folderFiles) {
-            String fileName = file.getName();
-            String fullFilePath = file.getAbsolutePath();
-            String relativePath = (pathPrefix.isEmpty() ? "" : (pathPrefix + "/")) + fileName;
-
-            if (CodePushUpdateUtils.isHashIgnored(relativePath)) {
-                continue;
-            }
-
-            if (file.isDirectory()) {
-                addContentsOfFolderToManifest(fullFilePath, relativePath, manifest);
-            } else {
-                try {
-                    manifest.add(relativePath + ":" + computeHash(new FileInputStream(file)));
-                } catch (FileNotFoundException e) {
-                    // Should not happen.
-                    throw new CodePushUnknownException("Unable to compute hash of update contents.", e);
-                }
-            }
-        }
-    }
-
     private static String computeHash(InputStream dataStream) {
         MessageDigest messageDigest = null;
         DigestInputStream digestInputStream = null;
         try {
-            messageDigest = MessageDigest.getInstance("SHA-256");
+            messageDigest = createHashDigest();
             digestInputStream = new DigestInputStream(dataStream, messageDigest);
             byte[] byteBuffer = new byte[1024 * 8];
             while (digestInputStream.read(byteBuffer) != -1) ;
-        } catch (NoSuchAlgorithmException | IOException e) {
+        } catch (IOException e) {
             // Should not happen.
             throw new CodePushUnknownException("Unable to compute hash of update contents.", e);
         } finally {
@@ -93,25 +70,94 @@ public class CodePushUpdateUtils {
             }
         }
 
-        byte[] hash = messageDigest.digest();
+        return formatHash(messageDigest.digest());
+    }
+
+    public static String computeFileHash(File file) {
+        try {
+            return computeHash(new FileInputStream(file));
+        } catch (FileNotFoundException e) {
+            throw new CodePushUnknownException("Unable to compute hash of update contents.", e);
+        }
+    }
+
+    // Returns a digest for the per-file hashes of the update contents manifest.
+    static MessageDigest createHashDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Should not happen.
+            throw new CodePushUnknownException("Unable to compute hash of update contents.", e);
+        }
+    }
+
+    static String formatHash(byte[] hash) {
         return String.format("%064x", new java.math.BigInteger(1, hash));
     }
 
     public static void copyNecessaryFilesFromCurrentPackage(String diffManifestFilePath, String currentPackageFolderPath, String newPackageFolderPath) throws IOException {
-        FileUtils.copyDirectoryContents(currentPackageFolderPath, newPackageFolderPath);        
+        copyNecessaryFilesFromCurrentPackage(diffManifestFilePath, currentPackageFolderPath, newPackageFolderPath, null, null);
+    }
+
+    /**
+     * Same as above, and if fileHashes is not null it receives the hashes of the files that were
+     * kept from the current package, keyed by their path relative to the new package folder.
+     * Kept files are hard linked where possible, deleted files and the package metadata are
+     * never copied. The hashes of linked files are taken from hashCache when it is not null.
+     */
+    public static void copyNecessaryFilesFromCurrentPackage(String diffManifestFilePath, String currentPackageFolderPath, String newPackageFolderPath,
+                                                            Map<String, String> fileHashes, CodePushHashCache hashCache) throws IOException {
+        if (currentPackageFolderPath == null || !new File(currentPackageFolderPath).isDirectory()) {
+            throw new CodePushInvalidUpdateException("Update is invalid - A diff update was downloaded but there is no current package to apply it to.");
+        }
+
         JSONObject diffManifest = CodePushUtils.getJsonObjectFromFile(diffManifestFilePath);
+        Set<String> skippedFiles = new HashSet<>();
         try {
             JSONArray deletedFiles = diffManifest.getJSONArray("deletedFiles");
             for (int i = 0; i < deletedFiles.length(); i++) {
-                String fileNameToDelete = deletedFiles.getString(i);
-                File fileToDelete = new File(newPackageFolderPath, fileNameToDelete);
-                if (fileToDelete.exists()) {
-                    fileToDelete.delete();
-                }
+                skippedFiles.add(deletedFiles.getString(i));
             }
         } catch (JSONException e) {
             throw new CodePushUnknownException("Unable to copy files from current package during diff update", e);
         }
+
+        // The metadata of the current package is replaced by the one of the new package.
+        skippedFiles.add(CodePushConstants.PACKAGE_FILE_NAME);
+        linkOrCopyFolderContents(new File(currentPackageFolderPath), new File(newPackageFolderPath), "", skippedFiles, fileHashes, hashCache);
+    }
+
+    private static void linkOrCopyFolderContents(File sourceFolder, File destinationFolder, String pathPrefix,
+                                                 Set<String> skippedFiles, Map<String, String> fileHashes,
+                                                 CodePushHashCache hashCache) throws IOException {
+        destinationFolder.mkdirs();
+        File[] folderFiles = sourceFolder.listFiles();
+        if (folderFiles == null) {
+            throw new CodePushUnknownException("Unable to list files of current package during diff update: " + sourceFolder.getAbsolutePath());
+        }
+
+        for (File file : folderFiles) {
+            String relativePath = (pathPrefix.isEmpty() ? "" : (pathPrefix + "/")) + file.getName();
+            if (skippedFiles.contains(relativePath)) {
+                continue;
+            }
+
+            File destinationFile = new File(destinationFolder, file.getName());
+            if (file.isDirectory()) {
+                linkOrCopyFolderContents(file, destinationFile, relativePath, skippedFiles, fileHashes, hashCache);
+            } else if (FileUtils.linkFile(file, destinationFile)) {
+                if (fileHashes != null) {
+                    String hash = hashCache != null ? hashCache.getHash(file) : null;
+                    fileHashes.put(relativePath, hash != null ? hash : computeFileHash(destinationFile));
+                }
+            } else {
+                MessageDigest digest = fileHashes != null ? createHashDigest() : null;
+                FileUtils.copyFile(file, destinationFile, digest);
+                if (digest != null) {
+                    fileHashes.put(relativePath, formatHash(digest.digest()));
+                }
+            }
+        }
     }
 
     public static String findJSBundleInUpdateContents(String folderPath, String expectedFileName) {
@@ -158,8 +204,43 @@ public class CodePushUpdateUtils {
     // 3. SHA256-hash the result
     public static void verifyFolderHash(String folderPath, String expectedHash) {
         CodePushUtils.log("Verifying hash for folder path: " + folderPath);
+        ArrayList<String> updateContentsManifest = new CodePushFolderHasher().hashFolderContents(folderPath);
+        verifyManifestHash(updateContentsManifest, expectedHash);
+    }
+
+    /**
+     * Verifies the folder against the file hashes recorded while its contents were written, so
+     * that the files don't have to be read a second time. Falls back to hashing the folder
+     * contents when no hashes were recorded, or when the files in the folder are not exactly
+     * the recorded ones.
+     */
+    public static void verifyFolderHash(String folderPath, String expectedHash, Map<String, String> fileHashes) {
+        if (fileHashes == null) {
+            verifyFolderHash(folderPath, expectedHash);
+            return;
+        }
+
+        Set<String> recordedPaths = new HashSet<>();
+        for (String relativePath : fileHashes.keySet()) {
+            if (!CodePushUpdateUtils.isHashIgnored(relativePath)) {
+                recordedPaths.add(relativePath);
+            }
+        }
+        if (!recordedPaths.equals(new HashSet<>(CodePushFolderHasher.listFolderContents(folderPath)))) {
+            CodePushUtils.log("The update contents don't match the recorded file hashes, hashing the folder instead.");
+            verifyFolderHash(folderPath, expectedHash);
+            return;
+        }
+
+        CodePushUtils.log("Verifying hash for folder path: " + folderPath + " from recorded file hashes");
         ArrayList<String> updateContentsManifest = new ArrayList<>();
-        addContentsOfFolderToManifest(folderPath, "", updateContentsManifest);
+        for (String relativePath : recordedPaths) {
+            updateContentsManifest.add(relativePath + ":" + fileHashes.get(relativePath));
+        }
+        verifyManifestHash(updateContentsManifest, expectedHash);
+    }
+
+    private static void verifyManifestHash(ArrayList<String> updateContentsManifest, String expectedHash) {
         //sort manifest strings to make sure, that they are completely equal with manifest strings has been generated in cli!
         Collections.sort(updateContentsManifest);
         JSONArray updateContentsJSONArray = new JSONArray();
@@ -0,0 +1,155 @@
+package com.microsoft.codepush.react;
+
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Threads shared by the work done on every file of an update (extracting, decoding, hashing and
+ * patching), and the buffer and digest each thread reuses from one file to the next.
+ */
+class CodePushWorkerPool {
+    static final int BUFFER_SIZE = 64 * 1024;
+    // Below this many files per thread, handing the files out costs more than the threads save.
+    private static final int MIN_FILES_PER_THREAD = 4;
+
+    private static final ThreadLocal<byte[]> sBuffer = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[BUFFER_SIZE];
+        }
+    };
+
+    private static final ThreadLocal<MessageDigest> sDigest = new ThreadLocal<MessageDigest>() {
+        @Override
+        protected MessageDigest initialValue() {
+            return CodePushUpdateUtils.createHashDigest();
+        }
+    };
+
+    // Threads are created as needed and kept for a minute, so the work of one update reuses them.
+    // How many run at once is bounded by the callers, see run.
+    private static final ExecutorService sExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger mThreadNumber = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "CodePush worker " + mThreadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    interface Task {
+        void run(int index) throws IOException;
+    }
+
+    private CodePushWorkerPool() {
+    }
+
+    /**
+     * Returns the buffer of the calling thread. It must not be held across a call that may use
+     * it too.
+     */
+    static byte[] getBuffer() {
+        return sBuffer.get();
+    }
+
+    /**
+     * Returns the SHA-256 digest of the calling thread, reset.
+     */
+    static MessageDigest getDigest() {
+        MessageDigest digest = sDigest.get();
+        digest.reset();
+        return digest;
+    }
+
+    /**
+     * Returns how many threads are worth using for fileCount files of similar cost, at most
+     * maxThreadCount.
+     */
+    static int getThreadCount(int maxThreadCount, int fileCount) {
+        return Math.max(1, Math.min(maxThreadCount, fileCount / MIN_FILES_PER_THREAD));
+    }
+
+    static <T> Future<T> submit(Callable<T> task) {
+        return sExecutor.submit(task);
+    }
+
+    /**
+     * Runs task for every index below count, on up to threadCount threads including the calling
+     * one, and returns once they have all run. Indexes are handed out in order. Once a task fails,
+     * the indexes after it are skipped, and the failure of the lowest failed index is thrown.
+     */
+    static void run(int threadCount, final int count, final Task task) throws IOException {
+        final AtomicInteger nextIndex = new AtomicInteger();
+        final Failure failure = new Failure();
+        int helperCount = Math.min(threadCount, count) - 1;
+        final CountDownLatch helpersDone = new CountDownLatch(Math.max(0, helperCount));
+        for (int i = 0; i < helperCount; i++) {
+            sExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        runTasks(task, count, nextIndex, failure);
+                    } finally {
+                        helpersDone.countDown();
+                    }
+                }
+            });
+        }
+
+        runTasks(task, count, nextIndex, failure);
+        try {
+            helpersDone.await();
+        } catch (InterruptedException e) {
+            failure.set(-1, e);
+            Thread.currentThread().interrupt();
+            throw new CodePushUnknownException("Processing of update contents was interrupted.", e);
+        }
+        failure.rethrow();
+    }
+
+    private static void runTasks(Task task, int count, AtomicInteger nextIndex, Failure failure) {
+        int index;
+        while ((index = nextIndex.getAndIncrement()) < count && index < failure.getIndex()) {
+            try {
+                task.run(index);
+            } catch (IOException | RuntimeException | Error e) {
+                failure.set(index, e);
+            }
+        }
+    }
+
+    private static class Failure {
+        private int mIndex = Integer.MAX_VALUE;
+        private Throwable mCause;
+
+        synchronized int getIndex() {
+            return mIndex;
+        }
+
+        synchronized void set(int index, Throwable cause) {
+            if (index < mIndex) {
+                mIndex = index;
+                mCause = cause;
+            }
+        }
+
+        synchronized void rethrow() throws IOException {
+            if (mCause instanceof IOException) {
+                throw (IOException) mCause;
+            } else if (mCause instanceof RuntimeException) {
+                throw (RuntimeException) mCause;
+            } else if (mCause instanceof Error) {
+                throw (Error) mCause;
+            }
+        }
+    }
+}
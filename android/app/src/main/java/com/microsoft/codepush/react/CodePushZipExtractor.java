@@ -0,0 +1,188 @@
+package com.microsoft.codepush.react;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Extracts a zip file on a pool of threads, using its central directory to find the entries.
+ * All entry paths are checked and all folders are created before any file is written.
+ */
+class CodePushZipExtractor {
+    private final int mThreadCount;
+    private final boolean mRestoreFileTimes;
+
+    public CodePushZipExtractor(int threadCount, boolean restoreFileTimes) {
+        mThreadCount = Math.max(1, threadCount);
+        mRestoreFileTimes = restoreFileTimes;
+    }
+
+    /**
+     * Extracts zipFile into destination, like {@link FileUtils#unzipFile}. Compressed entries
+     * are decoded on the same threads as the other entries.
+     */
+    public CodePushCompressionMode extract(File zipFile, String destination, final Map<String, String> fileHashes) throws IOException {
+        final File destinationFolder = new File(destination);
+        if (destinationFolder.exists()) {
+            FileUtils.deleteFileOrFolderSilently(destinationFolder);
+        }
+        destinationFolder.mkdirs();
+
+        final ZipFile zip = new ZipFile(zipFile);
+        try {
+            CodePushCompressionMode compressionMode = CodePushCompressionMode.DEFAULT;
+            final List<ZipEntry> fileEntries = new ArrayList<>();
+            final List<String> relativePaths = new ArrayList<>();
+            Set<String> targetPaths = new HashSet<>();
+            TreeSet<String> folders = new TreeSet<>();
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                String entryName = entry.getName();
+                CodePushCompressionMode entryCompressionMode = entry.isDirectory()
+                        ? CodePushCompressionMode.DEFAULT : CodePushCompressionMode.fromFileName(entryName);
+                if (entryCompressionMode != CodePushCompressionMode.DEFAULT) {
+                    compressionMode = entryCompressionMode;
+                    entryName = entryName.substring(0, entryName.length() - entryCompressionMode.getFileExtension().length());
+                }
+
+                String relativePath = resolveEntryPath(entryName);
+                if (entry.isDirectory()) {
+                    if (!relativePath.isEmpty()) folders.add(relativePath);
+                    continue;
+                }
+                if (relativePath.isEmpty()) {
+                    throw new IllegalStateException("File is outside extraction target directory.");
+                }
+
+                // Entries such as "x" and "x.br" would otherwise be written to the same file by two threads.
+                if (!targetPaths.add(relativePath)) {
+                    throw new CodePushInvalidUpdateException("Update is invalid - More than one entry is extracted to \"" + relativePath + "\".");
+                }
+
+                int separatorIndex = relativePath.lastIndexOf('/');
+                if (separatorIndex > 0) {
+                    folders.add(relativePath.substring(0, separatorIndex));
+                }
+                fileEntries.add(entry);
+                relativePaths.add(relativePath);
+            }
+
+            for (String folder : folders) {
+                for (String path = folder; path != null; path = path.lastIndexOf('/') > 0 ? path.substring(0, path.lastIndexOf('/')) : null) {
+                    if (targetPaths.contains(path)) {
+                        throw new CodePushInvalidUpdateException("Update is invalid - \"" + path + "\" is both a file and a folder.");
+                    }
+                }
+            }
+
+            createFolders(destinationFolder, folders);
+
+            final String[] hashes = new String[fileEntries.size()];
+            CodePushWorkerPool.run(CodePushWorkerPool.getThreadCount(mThreadCount, fileEntries.size()), fileEntries.size(), new CodePushWorkerPool.Task() {
+                @Override
+                public void run(int index) throws IOException {
+                    File file = new File(destinationFolder, relativePaths.get(index));
+                    hashes[index] = extractEntry(zip, fileEntries.get(index), file, fileHashes != null);
+                }
+            });
+
+            if (fileHashes != null) {
+                for (int i = 0; i < fileEntries.size(); i++) {
+                    fileHashes.put(relativePaths.get(i), hashes[i]);
+                }
+            }
+            return compressionMode;
+        } finally {
+            zip.close();
+        }
+    }
+
+    /**
+     * Resolves "." and ".." in an entry name without touching the file system. This is enough
+     * because the destination was just created empty and only gets plain files and folders, so
+     * there are no symlinks that a canonical path would have to follow.
+     */
+    static String resolveEntryPath(String entryName) {
+        List<String> segments = new ArrayList<>();
+        for (String segment : entryName.split("/")) {
+            if (segment.isEmpty() || segment.equals(".")) {
+                continue;
+            } else if (segment.equals("..")) {
+                if (segments.isEmpty()) {
+                    throw new IllegalStateException("File is outside extraction target directory.");
+                }
+                segments.remove(segments.size() - 1);
+            } else {
+                segments.add(segment);
+            }
+        }
+
+        StringBuilder relativePath = new StringBuilder();
+        for (String segment : segments) {
+            if (relativePath.length() > 0) relativePath.append('/');
+            relativePath.append(segment);
+        }
+        return relativePath.toString();
+    }
+
+    // Only the deepest folders need mkdirs, their parents are created along the way.
+    private static void createFolders(File destinationFolder, TreeSet<String> folders) {
+        Iterator<String> iterator = folders.iterator();
+        String folder = iterator.hasNext() ? iterator.next() : null;
+        while (folder != null) {
+            String next = iterator.hasNext() ? iterator.next() : null;
+            if (next == null || !next.startsWith(folder + "/")) {
+                new File(destinationFolder, folder).mkdirs();
+            }
+            folder = next;
+        }
+    }
+
+    private String extractEntry(ZipFile zip, ZipEntry entry, File file, boolean recordHash) throws IOException {
+        CodePushCompressionMode compressionMode = CodePushCompressionMode.fromFileName(entry.getName());
+        boolean isCompressedEntry = compressionMode != CodePushCompressionMode.DEFAULT;
+        byte[] buffer = CodePushWorkerPool.getBuffer();
+        MessageDigest digest = recordHash ? CodePushWorkerPool.getDigest() : null;
+
+        InputStream input = null;
+        FileOutputStream output = null;
+        try {
+            input = zip.getInputStream(entry);
+            if (isCompressedEntry) {
+                input = FileUtils.newDecodingStream(input, compressionMode);
+            }
+            output = new FileOutputStream(file);
+            int numBytesRead;
+            while ((numBytesRead = input.read(buffer)) != -1) {
+                output.write(buffer, 0, numBytesRead);
+                if (digest != null) digest.update(buffer, 0, numBytesRead);
+            }
+        } catch (IOException e) {
+            if (!isCompressedEntry) throw e;
+            CodePushUtils.log("Failed to decompress " + entry.getName() + ": " + e.getMessage());
+            throw new CodePushUnknownException("Failed to decompress " + entry.getName() + ": " + e.getMessage());
+        } finally {
+            if (input != null) input.close();
+            if (output != null) output.close();
+        }
+
+        long time = entry.getTime();
+        if (mRestoreFileTimes && time > 0) {
+            file.setLastModified(time);
+        }
+        return digest != null ? CodePushUpdateUtils.formatHash(digest.digest()) : null;
+    }
+}
@@ -0,0 +1,80 @@
+package com.microsoft.codepush.react;
+
+import com.github.luben.zstd.ZstdDictDecompress;
+import com.github.luben.zstd.ZstdInputStreamNoFinalizer;
+import com.github.luben.zstd.util.Native;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decodes Zstandard data with zstd-jni, which apps add themselves when they publish Zstandard
+ * compressed updates, see {@link CodePush#setZstdDictionary}.
+ */
+class CodePushZstdDecoder {
+    private static final String ZSTD_CLASS_NAME = "com.github.luben.zstd.ZstdInputStreamNoFinalizer";
+
+    private static final boolean sAvailable = loadZstd();
+
+    private CodePushZstdDecoder() {
+    }
+
+    public static boolean isAvailable() {
+        return sAvailable;
+    }
+
+    /**
+     * Returns a stream of the data decoded from source, using the dictionary set on CodePush
+     * if any. Closing it closes source.
+     */
+    public static InputStream newInputStream(InputStream source) throws IOException {
+        if (!sAvailable) {
+            throw new CodePushUnknownException("The update contains Zstandard compressed files, add com.github.luben:zstd-jni to the app to decode them.");
+        }
+        return ZstdJni.newInputStream(source);
+    }
+
+    // zstd-jni is optional, packages without Zstandard files don't need it. ZstdJni, which refers
+    // to its classes, is only loaded once they are known to be there.
+    private static boolean loadZstd() {
+        try {
+            Class.forName(ZSTD_CLASS_NAME, false, CodePushZstdDecoder.class.getClassLoader());
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+        return ZstdJni.loadNativeLibrary();
+    }
+
+    private static class ZstdJni {
+        private static byte[] sDictionaryData;
+        private static ZstdDictDecompress sDictionary;
+
+        static InputStream newInputStream(InputStream source) throws IOException {
+            ZstdInputStreamNoFinalizer stream = new ZstdInputStreamNoFinalizer(source);
+            ZstdDictDecompress dictionary = getDictionary();
+            if (dictionary != null) {
+                stream.setDict(dictionary);
+            }
+            return stream;
+        }
+
+        // The dictionary is digested once and shared by all the streams, until another one is set.
+        private static synchronized ZstdDictDecompress getDictionary() {
+            byte[] dictionaryData = CodePush.getZstdDictionary();
+            if (dictionaryData != sDictionaryData) {
+                sDictionaryData = dictionaryData;
+                sDictionary = dictionaryData != null ? new ZstdDictDecompress(dictionaryData) : null;
+            }
+            return sDictionary;
+        }
+
+        static boolean loadNativeLibrary() {
+            try {
+                Native.load();
+                return true;
+            } catch (LinkageError e) {
+                return false;
+            }
+        }
+    }
+}
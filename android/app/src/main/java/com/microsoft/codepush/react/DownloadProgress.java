@@ -6,10 +6,39 @@ import com.facebook.react.bridge.WritableNativeMap;
 class DownloadProgress {
     private long mTotalBytes;
     private long mReceivedBytes;
+    private long mDecompressedBytes;
+    private long mBytesPerSecond;
 
     public DownloadProgress (long totalBytes, long receivedBytes){
         mTotalBytes = totalBytes;
         mReceivedBytes = receivedBytes;
+        mDecompressedBytes = receivedBytes;
+    }
+
+    public void update(long totalBytes, long receivedBytes, long decompressedBytes) {
+        mTotalBytes = totalBytes;
+        mReceivedBytes = receivedBytes;
+        mDecompressedBytes = decompressedBytes;
+    }
+
+    public long getReceivedBytes() {
+        return mReceivedBytes;
+    }
+
+    public long getBytesPerSecond() {
+        return mBytesPerSecond;
+    }
+
+    public void setBytesPerSecond(long bytesPerSecond) {
+        mBytesPerSecond = bytesPerSecond;
+    }
+
+    // Returns the estimated number of seconds until the download completes, or -1 if unknown.
+    public long getEstimatedTimeRemaining() {
+        if (mBytesPerSecond <= 0 || mTotalBytes <= 0 || mReceivedBytes > mTotalBytes) {
+            return -1;
+        }
+        return (mTotalBytes - mReceivedBytes + mBytesPerSecond - 1) / mBytesPerSecond;
     }
 
     public WritableMap createWritableMap() {
@@ -21,6 +50,9 @@ class DownloadProgress {
             map.putDouble("totalBytes", mTotalBytes);
             map.putDouble("receivedBytes", mReceivedBytes);
         }
+        map.putDouble("decompressedBytes", mDecompressedBytes);
+        map.putDouble("bytesPerSecond", mBytesPerSecond);
+        map.putDouble("estimatedTimeRemaining", getEstimatedTimeRemaining());
         return map;
     }
 
@@ -1,5 +1,11 @@
 package com.microsoft.codepush.react;
 
 interface DownloadProgressCallback {
-    void call(DownloadProgress downloadProgress);
+    /**
+     * @param totalBytes        the size of the response body as sent, or -1 if unknown.
+     * @param receivedBytes     the number of bytes received so far.
+     * @param decompressedBytes the number of bytes received so far after decoding the transfer
+     *                          encoding, the same as receivedBytes for uncompressed responses.
+     */
+    void call(long totalBytes, long receivedBytes, long decompressedBytes);
 }
@@ -0,0 +1,86 @@
+package com.microsoft.codepush.react;
+
+import android.os.SystemClock;
+
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.modules.core.DeviceEventManagerModule;
+
+/**
+ * Emits download progress events to JS at most once per interval or byte threshold, whichever
+ * is reached first, plus a final event once the download completes. The counters are updated
+ * in place, so reporting progress allocates nothing between two events.
+ */
+class DownloadProgressReporter implements DownloadProgressCallback {
+    // Weight of the latest measurement in the smoothed download rate, in percent.
+    private static final int RATE_SMOOTHING_PERCENT = 30;
+
+    private final ReactApplicationContext mContext;
+    private final long mIntervalMillis;
+    private final long mByteThreshold;
+    private final DownloadProgress mProgress = new DownloadProgress(0, 0);
+    private long mLastEventTime = -1;
+    private long mLastEventBytes;
+    private boolean mCompletionReported;
+
+    /**
+     * @param intervalMillis minimum time between two events, or 0 to not throttle by time.
+     * @param byteThreshold  number of bytes after which an event is sent regardless of the
+     *                       interval, or 0 to not throttle by size.
+     */
+    public DownloadProgressReporter(ReactApplicationContext context, long intervalMillis, long byteThreshold) {
+        mContext = context;
+        mIntervalMillis = intervalMillis;
+        mByteThreshold = byteThreshold;
+    }
+
+    @Override
+    public void call(long totalBytes, long receivedBytes, long decompressedBytes) {
+        mProgress.update(totalBytes, receivedBytes, decompressedBytes);
+        long now = SystemClock.elapsedRealtime();
+        if (mLastEventTime < 0) {
+            // The first event only sets the baseline of the rate, which may not start at zero
+            // for a resumed download.
+            emit(now);
+            mCompletionReported = mProgress.isCompleted();
+            return;
+        }
+
+        if (mProgress.isCompleted()) {
+            if (!mCompletionReported) {
+                updateRate(now);
+                emit(now);
+                mCompletionReported = true;
+            }
+            return;
+        }
+
+        boolean isThrottled = mIntervalMillis > 0 || mByteThreshold > 0;
+        boolean intervalElapsed = mIntervalMillis > 0 && now - mLastEventTime >= mIntervalMillis;
+        boolean thresholdReached = mByteThreshold > 0 && receivedBytes - mLastEventBytes >= mByteThreshold;
+        if (isThrottled && !intervalElapsed && !thresholdReached) {
+            return;
+        }
+
+        updateRate(now);
+        emit(now);
+    }
+
+    private void updateRate(long now) {
+        long elapsedMillis = now - mLastEventTime;
+        if (elapsedMillis <= 0) {
+            return;
+        }
+
+        long rate = (mProgress.getReceivedBytes() - mLastEventBytes) * 1000 / elapsedMillis;
+        long previousRate = mProgress.getBytesPerSecond();
+        mProgress.setBytesPerSecond(previousRate == 0 ? rate
+                : (previousRate * (100 - RATE_SMOOTHING_PERCENT) + rate * RATE_SMOOTHING_PERCENT) / 100);
+    }
+
+    private void emit(long now) {
+        mLastEventTime = now;
+        mLastEventBytes = mProgress.getReceivedBytes();
+        mContext.getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
+                .emit(CodePushConstants.DOWNLOAD_PROGRESS_EVENT_NAME, mProgress.createWritableMap());
+    }
+}
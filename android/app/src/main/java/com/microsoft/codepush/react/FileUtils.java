@@ -1,15 +1,24 @@
 package com.microsoft.codepush.react;
 
-import org.brotli.dec.BrotliInputStream;
+import android.system.ErrnoException;
+import android.system.Os;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
@@ -18,48 +27,48 @@ public class FileUtils {
     private static final int WRITE_BUFFER_SIZE = 1024 * 8;
 
     public static void copyDirectoryContents(String sourceDirectoryPath, String destinationDirectoryPath) throws IOException {
-        try {
-            File sourceDir = new File(sourceDirectoryPath);
-            File destDir = new File(destinationDirectoryPath);
-            if (!destDir.exists()) {
-                destDir.mkdir();
-            }
+        copyDirectoryContents(sourceDirectoryPath, destinationDirectoryPath, null);
+    }
 
-            for (File sourceFile : sourceDir.listFiles()) {
-                if (sourceFile.isDirectory()) {
-                    copyDirectoryContents(
-                            CodePushUtils.appendPathComponent(sourceDirectoryPath, sourceFile.getName()),
-                            CodePushUtils.appendPathComponent(destinationDirectoryPath, sourceFile.getName()));
-                } else {
-                    File destFile = new File(destDir, sourceFile.getName());
-                    FileInputStream fromFileStream = null;
-                    BufferedInputStream fromBufferedStream = null;
-                    FileOutputStream destStream = null;
-                    byte[] buffer = new byte[WRITE_BUFFER_SIZE];
-                    try {
-                        fromFileStream = new FileInputStream(sourceFile);
-                        fromBufferedStream = new BufferedInputStream(fromFileStream);
-                        destStream = new FileOutputStream(destFile);
-                        int bytesRead;
-                        while ((bytesRead = fromBufferedStream.read(buffer)) > 0) {
-                            destStream.write(buffer, 0, bytesRead);
-                        }
-                    } finally {
-                        try {
-                            if (fromFileStream != null) fromFileStream.close();
-                            if (fromBufferedStream != null) fromBufferedStream.close();
-                            if (destStream != null) destStream.close();
-                        } catch (IOException e) {
-                            throw new CodePushUnknownException("Error closing IO resources.", e);
-                        }
-                    }
+    /**
+     * Copies the directory contents and, if fileHashes is not null, records the SHA-256 of every
+     * copied file under its path relative to the destination while the bytes pass through.
+     * Throws if any of them can't be copied, leaving the destination incomplete.
+     */
+    public static void copyDirectoryContents(String sourceDirectoryPath, String destinationDirectoryPath, Map<String, String> fileHashes) throws IOException {
+        copyDirectoryContents(sourceDirectoryPath, destinationDirectoryPath, "", fileHashes);
+    }
+
+    private static void copyDirectoryContents(String sourceDirectoryPath, String destinationDirectoryPath, String relativePath, Map<String, String> fileHashes) throws IOException {
+        File sourceDir = new File(sourceDirectoryPath);
+        File destDir = new File(destinationDirectoryPath);
+        if (!destDir.isDirectory() && !destDir.mkdirs()) {
+            throw new IOException("Unable to create " + destinationDirectoryPath);
+        }
+        File[] sourceFiles = sourceDir.listFiles();
+        if (sourceFiles == null) {
+            throw new IOException("Unable to list files of " + sourceDirectoryPath);
+        }
+
+        MessageDigest digest = fileHashes != null ? CodePushUpdateUtils.createHashDigest() : null;
+        for (File sourceFile : sourceFiles) {
+            String fileRelativePath = relativePath.isEmpty() ? sourceFile.getName() : relativePath + "/" + sourceFile.getName();
+            if (sourceFile.isDirectory()) {
+                copyDirectoryContents(
+                        CodePushUtils.appendPathComponent(sourceDirectoryPath, sourceFile.getName()),
+                        CodePushUtils.appendPathComponent(destinationDirectoryPath, sourceFile.getName()),
+                        fileRelativePath, fileHashes);
+            } else {
+                File destFile = new File(destDir, sourceFile.getName());
+                // The destination may be a hard link shared with another package, so replace
+                // it instead of truncating it.
+                destFile.delete();
+                copyFile(sourceFile, destFile, digest);
+                if (digest != null) {
+                    fileHashes.put(fileRelativePath, CodePushUpdateUtils.formatHash(digest.digest()));
                 }
             }
-        } catch (Exception e){
-            e.printStackTrace();
-            CodePushUtils.log("sourceDirectoryPath or destinationDirectoryPath might be null " + e.toString());
         }
-
     }
 
     public static void deleteDirectoryAtPath(String directoryPath) {
@@ -98,6 +107,34 @@ public class FileUtils {
         return new File(filePath).exists();
     }
 
+    public static boolean isZipFile(File file) throws IOException {
+        byte[] header = new byte[4];
+        FileInputStream fileStream = new FileInputStream(file);
+        try {
+            int offset = 0;
+            int numBytesRead;
+            while (offset < header.length && (numBytesRead = fileStream.read(header, offset, header.length - offset)) > 0) {
+                offset += numBytesRead;
+            }
+            return offset == header.length && ByteBuffer.wrap(header).getInt() == 0x504b0304;
+        } finally {
+            fileStream.close();
+        }
+    }
+
+    /**
+     * Returns the path of file relative to folderPath using "/" separators, as used in the
+     * update contents manifest, or null if the file is not inside the folder.
+     */
+    public static String getRelativePath(String folderPath, File file) {
+        String folderPrefix = new File(folderPath).getAbsolutePath() + File.separator;
+        String filePath = file.getAbsolutePath();
+        if (!filePath.startsWith(folderPrefix)) {
+            return null;
+        }
+        return filePath.substring(folderPrefix.length()).replace(File.separatorChar, '/');
+    }
+
     public static void moveFile(File fileToMove, String newFolderPath, String newFileName) {
         File newFolder = new File(newFolderPath);
         if (!newFolder.exists()) {
@@ -145,45 +182,112 @@ public class FileUtils {
     }
 
     public static CodePushCompressionMode unzipFile(File zipFile, String destination) throws IOException {
+        return unzipFile(zipFile, destination, null, 1);
+    }
+
+    public static CodePushCompressionMode unzipFile(File zipFile, String destination, Map<String, String> fileHashes,
+                                                    int decompressionThreadCount) throws IOException {
         FileInputStream fileStream = null;
         BufferedInputStream bufferedStream = null;
-        ZipInputStream zipStream = null;
-        CodePushCompressionMode compressionMode = CodePushCompressionMode.DEFAULT;
         try {
             fileStream = new FileInputStream(zipFile);
             bufferedStream = new BufferedInputStream(fileStream);
-            zipStream = new ZipInputStream(bufferedStream);
-            ZipEntry entry;
-
-            File destinationFolder = new File(destination);
-            if (destinationFolder.exists()) {
-                deleteFileOrFolderSilently(destinationFolder);
+            return unzipStream(bufferedStream, destination, fileHashes, decompressionThreadCount);
+        } finally {
+            try {
+                if (bufferedStream != null) bufferedStream.close();
+                if (fileStream != null) fileStream.close();
+            } catch (IOException e) {
+                throw new CodePushUnknownException("Error closing IO resources.", e);
             }
+        }
+    }
 
-            destinationFolder.mkdirs();
-            byte[] buffer = new byte[WRITE_BUFFER_SIZE];
+    /**
+     * Extracts the zip read from inputStream into destination. The stream is read up to the
+     * end of the last entry and is left open for the caller. If fileHashes is not null, the
+     * SHA-256 of every extracted file is recorded under its path relative to destination.
+     * Compressed entries are decoded on decompressionThreadCount threads, or inline
+     * while reading the zip if it is 1.
+     */
+    public static CodePushCompressionMode unzipStream(InputStream inputStream, String destination, Map<String, String> fileHashes,
+                                                      int decompressionThreadCount) throws IOException {
+        // Closing the zip stream releases its inflater, but must not close the caller's stream.
+        ZipInputStream zipStream = new ZipInputStream(new NonClosingInputStream(inputStream));
+        try {
+            return unzipEntries(zipStream, new File(destination), fileHashes, decompressionThreadCount);
+        } finally {
+            zipStream.close();
+        }
+    }
+
+    private static CodePushCompressionMode unzipEntries(ZipInputStream zipStream, File destinationFolder, Map<String, String> fileHashes,
+                                                        int decompressionThreadCount) throws IOException {
+        CodePushCompressionMode compressionMode = CodePushCompressionMode.DEFAULT;
+        ZipEntry entry;
+
+        if (destinationFolder.exists()) {
+            deleteFileOrFolderSilently(destinationFolder);
+        }
+
+        destinationFolder.mkdirs();
+        String destinationFolderCanonicalPath = destinationFolder.getCanonicalPath() + File.separator;
+        MessageDigest digest = fileHashes != null ? CodePushUpdateUtils.createHashDigest() : null;
+        byte[] buffer = new byte[WRITE_BUFFER_SIZE];
+        Set<String> extractedPaths = new HashSet<>();
+        // With several decompression threads, compressed entries are written out as they are and
+        // decoded in place while the following entries are extracted.
+        CodePushParallelDecompressor decompressor = decompressionThreadCount > 1
+                ? new CodePushParallelDecompressor(decompressionThreadCount, fileHashes != null) : null;
+        try {
             while ((entry = zipStream.getNextEntry()) != null) {
-                if (entry.getName().endsWith(".br")) {
-                    compressionMode = CodePushCompressionMode.BROTLI;
+                String entryName = entry.getName();
+                // Otherwise compressed entries are decoded as they come out of the zip, so their
+                // bytes are written only once.
+                CodePushCompressionMode entryCompressionMode = entry.isDirectory()
+                        ? CodePushCompressionMode.DEFAULT : CodePushCompressionMode.fromFileName(entryName);
+                boolean isCompressedEntry = entryCompressionMode != CodePushCompressionMode.DEFAULT;
+                if (isCompressedEntry) {
+                    compressionMode = entryCompressionMode;
+                    entryName = entryName.substring(0, entryName.length() - entryCompressionMode.getFileExtension().length());
                 }
-                String fileName = validateFileName(entry.getName(), destinationFolder);
+                String fileName = validateFileName(entryName, destinationFolder);
                 File file = new File(fileName);
+                String relativePath = fileName.substring(destinationFolderCanonicalPath.length()).replace(File.separatorChar, '/');
                 if (entry.isDirectory()) {
                     file.mkdirs();
                 } else {
+                    // A compressed entry is decoded on another thread, so "x" and "x.br" would race on the same file.
+                    if (!extractedPaths.add(relativePath)) {
+                        throw new CodePushInvalidUpdateException("Update is invalid - More than one entry is extracted to \"" + relativePath + "\".");
+                    }
                     File parent = file.getParentFile();
                     if (!parent.exists()) {
                         parent.mkdirs();
                     }
 
-                    FileOutputStream fout = new FileOutputStream(file);
+                    if (isCompressedEntry && decompressor != null) {
+                        // Not named after the entry, or "x.br.br" would be decoded into "x.br",
+                        // which is where "x.br" itself is written before being decoded.
+                        File compressedFile = File.createTempFile(".codepush", entryCompressionMode.getFileExtension(), parent);
+                        writeStream(zipStream, compressedFile, buffer, null);
+                        decompressor.submit(compressedFile, file, entryCompressionMode, entry.getTime(), relativePath);
+                        continue;
+                    }
+
+                    InputStream entryStream = isCompressedEntry
+                            ? newDecodingStream(new NonClosingInputStream(zipStream), entryCompressionMode) : zipStream;
                     try {
-                        int numBytesRead;
-                        while ((numBytesRead = zipStream.read(buffer)) != -1) {
-                            fout.write(buffer, 0, numBytesRead);
-                        }
+                        writeStream(entryStream, file, buffer, digest);
+                    } catch (IOException e) {
+                        if (!isCompressedEntry) throw e;
+                        CodePushUtils.log("Failed to decompress " + entry.getName() + ": " + e.getMessage());
+                        throw new CodePushUnknownException("Failed to decompress " + entry.getName() + ": " + e.getMessage());
                     } finally {
-                        fout.close();
+                        if (isCompressedEntry) entryStream.close();
+                    }
+                    if (digest != null) {
+                        fileHashes.put(relativePath, CodePushUpdateUtils.formatHash(digest.digest()));
                     }
                 }
                 long time = entry.getTime();
@@ -191,18 +295,43 @@ public class FileUtils {
                     file.setLastModified(time);
                 }
             }
-        } finally {
-            try {
-                if (zipStream != null) zipStream.close();
-                if (bufferedStream != null) bufferedStream.close();
-                if (fileStream != null) fileStream.close();
-            } catch (IOException e) {
-                throw new CodePushUnknownException("Error closing IO resources.", e);
+
+            if (decompressor != null) {
+                decompressor.awaitCompletion(fileHashes);
             }
+        } finally {
+            if (decompressor != null) decompressor.shutdown();
         }
         return compressionMode;
     }
 
+    /**
+     * Returns a stream of the data decoded from source. Closing it closes source.
+     */
+    static InputStream newDecodingStream(InputStream source, CodePushCompressionMode compressionMode) throws IOException {
+        switch (compressionMode) {
+            case BROTLI:
+                return CodePushBrotliDecoder.newInputStream(source);
+            case ZSTD:
+                return CodePushZstdDecoder.newInputStream(source);
+            default:
+                return source;
+        }
+    }
+
+    private static void writeStream(InputStream input, File file, byte[] buffer, MessageDigest digest) throws IOException {
+        FileOutputStream fout = new FileOutputStream(file);
+        try {
+            int numBytesRead;
+            while ((numBytesRead = input.read(buffer)) != -1) {
+                fout.write(buffer, 0, numBytesRead);
+                if (digest != null) digest.update(buffer, 0, numBytesRead);
+            }
+        } finally {
+            fout.close();
+        }
+    }
+
     public static void writeStringToFile(String content, String filePath) throws IOException {
         PrintWriter out = null;
         try {
@@ -213,68 +342,111 @@ public class FileUtils {
         }
     }
 
-    public static void decompressFiles(String unzippedFolderPath, String decompressedFolderPath) throws IOException {
-        File unzippedFolder = new File(unzippedFolderPath);
-        File decompressedFolder = new File(decompressedFolderPath);
-        
-        if (!decompressedFolder.exists()) {
-            decompressedFolder.mkdirs();
+    /**
+     * Copies sourceFile to targetFile and, if digest is not null, hashes the bytes copied.
+     * Without a digest the kernel copies them without going through the Java heap, otherwise
+     * they pass through a buffer reused by the thread to be hashed.
+     */
+    static void copyFile(File sourceFile, File targetFile, MessageDigest digest) throws IOException {
+        FileInputStream in = new FileInputStream(sourceFile);
+        try {
+            FileOutputStream out = new FileOutputStream(targetFile);
+            try {
+                if (digest == null) {
+                    FileChannel source = in.getChannel();
+                    transfer(source, 0, source.size(), out.getChannel());
+                } else {
+                    // Reading into an array is faster than into a heap ByteBuffer, which the
+                    // channel copies through a direct buffer of its own.
+                    byte[] buffer = CodePushWorkerPool.getBuffer();
+                    int read;
+                    while ((read = in.read(buffer)) > 0) {
+                        out.write(buffer, 0, read);
+                        digest.update(buffer, 0, read);
+                    }
+                }
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Copies count bytes of source from position to the current position of destination,
+     * without going through the Java heap.
+     */
+    static void transfer(FileChannel source, long position, long count, FileChannel destination) throws IOException {
+        long end = position + count;
+        while (position < end) {
+            long transferred = source.transferTo(position, end - position, destination);
+            if (transferred <= 0) {
+                throw new IOException("Unexpected end of file at offset " + position + ".");
+            }
+            position += transferred;
         }
-        
-        decompressFilesRecursive(unzippedFolder, decompressedFolder);
     }
 
-    private static void decompressFilesRecursive(File sourceDir, File targetDir) throws IOException {
-        File[] files = sourceDir.listFiles();
-        if (files == null) return;
+    /**
+     * Moves the contents of sourceDirectoryPath into destinationDirectoryPath, replacing the
+     * files that are already there. Entries are renamed when both folders are on the same file
+     * system and copied otherwise, so the source folder must be deleted by the caller.
+     */
+    public static void moveDirectoryContents(String sourceDirectoryPath, String destinationDirectoryPath) throws IOException {
+        File sourceDir = new File(sourceDirectoryPath);
+        File destDir = new File(destinationDirectoryPath);
+        destDir.mkdirs();
+        File[] sourceFiles = sourceDir.listFiles();
+        if (sourceFiles == null) {
+            throw new CodePushUnknownException("Unable to list files of " + sourceDirectoryPath);
+        }
+
+        for (File sourceFile : sourceFiles) {
+            File destFile = new File(destDir, sourceFile.getName());
+            if (sourceFile.isDirectory() && destFile.isDirectory()) {
+                moveDirectoryContents(sourceFile.getAbsolutePath(), destFile.getAbsolutePath());
+                continue;
+            }
+
+            if (destFile.exists()) {
+                deleteFileOrFolderSilently(destFile);
+            }
+            if (sourceFile.renameTo(destFile)) {
+                continue;
+            }
 
-        for (File sourceFile : files) {
-            File targetFile = new File(targetDir, sourceFile.getName());
-            
             if (sourceFile.isDirectory()) {
-                // Create corresponding directory in target and recurse
-                targetFile.mkdirs();
-                decompressFilesRecursive(sourceFile, targetFile);
+                copyDirectoryContents(sourceFile.getAbsolutePath(), destFile.getAbsolutePath());
             } else {
-                if (sourceFile.getName().endsWith(".br")) {
-                    // For .br files, decompress them
-                    String decompressedName = sourceFile.getName().substring(0, sourceFile.getName().length() - 3);
-                    File decompressedFile = new File(targetDir, decompressedName);
-                    try {
-                        decompressFile(sourceFile, decompressedFile);
-                    } catch (IOException e) {
-                       CodePushUtils.log("Failed to decompress " + sourceFile.getName() + ": " + e.getMessage());
-                        throw new CodePushUnknownException("Failed to decompress " + sourceFile.getName() + ": " + e.getMessage());
-                    }
-                } else {
-                    // For non-.br files, just copy them        
-                    copyFile(sourceFile, targetFile);
-                }
+                copyFile(sourceFile, destFile, null);
             }
         }
     }
 
-    private static void decompressFile(File sourceFile, File targetFile) throws IOException {
-        try (FileInputStream fileInputStream = new FileInputStream(sourceFile);
-             BrotliInputStream brotliInputStream = new BrotliInputStream(fileInputStream);
-             FileOutputStream fileOutputStream = new FileOutputStream(targetFile)) {
-            
-            byte[] buffer = new byte[8192];
-            int bytesRead;
-            while ((bytesRead = brotliInputStream.read(buffer)) != -1) {
-                fileOutputStream.write(buffer, 0, bytesRead);
-            }
+    /**
+     * Creates destination as a hard link to source.
+     *
+     * @return false if links are not supported on this file system, in which case the caller
+     * should copy the file instead.
+     */
+    public static boolean linkFile(File source, File destination) {
+        try {
+            Os.link(source.getAbsolutePath(), destination.getAbsolutePath());
+            return true;
+        } catch (ErrnoException e) {
+            CodePushUtils.log("Unable to link " + source.getName() + ", copying it instead: " + e.getMessage());
+            return false;
         }
     }
 
-    private static void copyFile(File sourceFile, File targetFile) throws IOException {
-        try (FileInputStream in = new FileInputStream(sourceFile);
-             FileOutputStream out = new FileOutputStream(targetFile)) {
-            byte[] buffer = new byte[8192];
-            int bytesRead;
-            while ((bytesRead = in.read(buffer)) != -1) {
-                out.write(buffer, 0, bytesRead);
-            }
+    private static class NonClosingInputStream extends FilterInputStream {
+        NonClosingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public void close() {
         }
     }
-}
\ No newline at end of file
+}
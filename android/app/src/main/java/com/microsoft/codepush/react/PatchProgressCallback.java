@@ -0,0 +1,12 @@
+package com.microsoft.codepush.react;
+
+interface PatchProgressCallback {
+    /**
+     * Called from the patching thread as the patched file is written.
+     *
+     * @param writtenBytes the number of bytes of the patched file written so far.
+     * @param totalBytes   the size of the patched file.
+     * @return false to cancel the patch, which then fails with BSPATCH_ERROR_CANCELLED.
+     */
+    boolean onProgress(long writtenBytes, long totalBytes);
+}
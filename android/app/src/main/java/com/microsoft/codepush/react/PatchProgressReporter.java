@@ -0,0 +1,62 @@
+package com.microsoft.codepush.react;
+
+import android.os.SystemClock;
+
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.bridge.WritableMap;
+import com.facebook.react.bridge.WritableNativeMap;
+import com.facebook.react.modules.core.DeviceEventManagerModule;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Emits patch progress as download status events, at most once per interval plus once when
+ * the patched file is complete. Cancels the patch once a newer download has started, as the
+ * update being patched is then stale.
+ */
+class PatchProgressReporter implements PatchProgressCallback {
+    private final ReactApplicationContext mContext;
+    private final AtomicLong mDownloadGeneration;
+    private final long mGeneration;
+    private final long mIntervalMillis;
+    private long mLastEventTime = -1;
+
+    /**
+     * @param downloadGeneration incremented whenever a download starts.
+     * @param generation         the value of downloadGeneration for the download being patched.
+     * @param intervalMillis     minimum time between two events, or 0 to not throttle.
+     */
+    public PatchProgressReporter(ReactApplicationContext context, AtomicLong downloadGeneration, long generation, long intervalMillis) {
+        mContext = context;
+        mDownloadGeneration = downloadGeneration;
+        mGeneration = generation;
+        mIntervalMillis = intervalMillis;
+    }
+
+    @Override
+    public boolean onProgress(long writtenBytes, long totalBytes) {
+        if (isStale()) {
+            CodePushUtils.log("Patch Process: Cancelling patch, a newer download has started.");
+            return false;
+        }
+
+        long now = SystemClock.elapsedRealtime();
+        boolean isCompleted = writtenBytes >= totalBytes;
+        if (!isCompleted && mLastEventTime >= 0 && mIntervalMillis > 0 && now - mLastEventTime < mIntervalMillis) {
+            return true;
+        }
+
+        mLastEventTime = now;
+        WritableMap map = new WritableNativeMap();
+        map.putString("name", CodePushConstants.PATCH_PROGRESS);
+        map.putDouble("writtenBytes", writtenBytes);
+        map.putDouble("totalBytes", totalBytes);
+        mContext.getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
+                .emit(CodePushConstants.DOWNLOAD_STATUS_EVENT_NAME, map);
+        return true;
+    }
+
+    public boolean isStale() {
+        return mDownloadGeneration.get() != mGeneration;
+    }
+}
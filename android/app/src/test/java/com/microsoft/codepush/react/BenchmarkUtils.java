@@ -0,0 +1,49 @@
+package com.microsoft.codepush.react;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Helpers shared by the benchmarks. They run with the unit tests on inputs small enough to keep
+ * the suite fast, and check that every variant they time gives the same result. For numbers
+ * worth quoting, scale the inputs up with the codePushBenchmarkScale Gradle property:
+ * <pre>
+ * ./gradlew :d11_dota:testDebugUnitTest --tests '*Benchmark' -PcodePushBenchmarkScale=10
+ * </pre>
+ */
+class BenchmarkUtils {
+    static final String SCALE_PROPERTY = "codepush.benchmark.scale";
+
+    private BenchmarkUtils() {
+    }
+
+    /**
+     * Returns the factor the benchmark inputs are multiplied by, 1 by default.
+     */
+    static int scale() {
+        return Math.max(1, Integer.getInteger(SCALE_PROPERTY, 1));
+    }
+
+    static int runs() {
+        return scale() > 1 ? 5 : 3;
+    }
+
+    static File createTempFolder(String prefix) throws IOException {
+        File folder = File.createTempFile(prefix, "");
+        if (!folder.delete() || !folder.mkdirs()) {
+            throw new IOException("Unable to create " + folder.getAbsolutePath());
+        }
+        return folder;
+    }
+
+    /**
+     * Prints the median of times, in nanoseconds, and the throughput it gives for bytes.
+     */
+    static void printMedian(String name, long[] times, long bytes) {
+        long[] sorted = times.clone();
+        Arrays.sort(sorted);
+        double millis = sorted[sorted.length / 2] / 1e6;
+        System.out.printf("  %-32s %8.1f ms median, %7.1f MB/s%n", name, millis, bytes / 1e3 / millis);
+    }
+}
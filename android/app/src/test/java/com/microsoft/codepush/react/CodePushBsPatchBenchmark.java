@@ -0,0 +1,128 @@
+package com.microsoft.codepush.react;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Times the Java bspatch engine against the native one on a generated patch, see
+ * {@link BenchmarkUtils}. The native runs are skipped unless the native library built for the
+ * host is on java.library.path.
+ */
+public class CodePushBsPatchBenchmark {
+    private static final int WINDOW_SIZE = 1024 * 1024;
+
+    private File mFolder;
+
+    @Before
+    public void setUp() throws IOException {
+        mFolder = BenchmarkUtils.createTempFolder("bspatch");
+    }
+
+    @After
+    public void tearDown() {
+        FileUtils.deleteDirectoryAtPath(mFolder.getPath());
+    }
+
+    @Test
+    public void patchesTheSameAsTheNativeEngine() throws IOException {
+        int runs = BenchmarkUtils.runs();
+        File oldFile = new File(mFolder, "old");
+        File patchFile = new File(mFolder, "patch");
+        File newFile = new File(mFolder, "new");
+        byte[] expected = createPatch(oldFile, patchFile, 8 * 1024 * 1024 * BenchmarkUtils.scale());
+        boolean hasNative = BsDiffPatchLoader.isAvailable();
+        System.out.println("Patching to " + expected.length / 1024 + " KB with a " + patchFile.length() / 1024
+                + " KB patch, native library " + (hasNative ? "loaded" : "not available") + ":");
+
+        long[] javaTimes = new long[runs];
+        long[] nativeTimes = new long[runs];
+        for (int run = 0; run < runs; run++) {
+            long start = System.nanoTime();
+            int result = CodePushBsPatch.bsPatchFile(oldFile.getPath(), newFile.getPath(), patchFile.getPath(), WINDOW_SIZE, null);
+            javaTimes[run] = System.nanoTime() - start;
+            assertEquals(CodePushBsPatch.BSPATCH_OK, result);
+            assertArrayEquals(expected, Files.readAllBytes(newFile.toPath()));
+
+            if (hasNative) {
+                start = System.nanoTime();
+                result = BsDiffPatchLoader.nativeBsPatchFileStreaming(oldFile.getPath(), newFile.getPath(),
+                        patchFile.getPath(), WINDOW_SIZE, new long[1], null);
+                nativeTimes[run] = System.nanoTime() - start;
+                assertEquals(CodePushBsPatch.BSPATCH_OK, result);
+                assertArrayEquals(expected, Files.readAllBytes(newFile.toPath()));
+            }
+        }
+        BenchmarkUtils.printMedian("Java", javaTimes, expected.length);
+        if (hasNative) {
+            BenchmarkUtils.printMedian("Native", nativeTimes, expected.length);
+        }
+    }
+
+    // Writes a random old file and an uncompressed ENDSLEY/BSDIFF43 patch that changes a few bytes
+    // of every block and inserts some new data between blocks, like a bundle after a small edit.
+    // Returns the new file the patch produces.
+    private static byte[] createPatch(File oldFile, File patchFile, int oldSize) throws IOException {
+        Random random = new Random(1);
+        byte[] old = new byte[oldSize];
+        random.nextBytes(old);
+        Files.write(oldFile.toPath(), old);
+
+        int blockSize = 64 * 1024;
+        int extraSize = 512;
+        int blockCount = oldSize / blockSize;
+        byte[] result = new byte[blockCount * (blockSize + extraSize)];
+        OutputStream patch = new BufferedOutputStream(new FileOutputStream(patchFile));
+        try {
+            patch.write("ENDSLEY/BSDIFF43".getBytes("US-ASCII"));
+            patch.write(offtout(result.length));
+            int resultPos = 0;
+            for (int block = 0; block < blockCount; block++) {
+                byte[] diff = new byte[blockSize];
+                for (int i = 0; i < 16; i++) {
+                    diff[random.nextInt(blockSize)] = (byte) (1 + random.nextInt(255));
+                }
+                byte[] extra = new byte[extraSize];
+                random.nextBytes(extra);
+
+                patch.write(offtout(blockSize));
+                patch.write(offtout(extraSize));
+                patch.write(offtout(0));
+                patch.write(diff);
+                patch.write(extra);
+
+                for (int i = 0; i < blockSize; i++) {
+                    result[resultPos++] = (byte) (diff[i] + old[block * blockSize + i]);
+                }
+                System.arraycopy(extra, 0, result, resultPos, extraSize);
+                resultPos += extraSize;
+            }
+        } finally {
+            patch.close();
+        }
+        return result;
+    }
+
+    private static byte[] offtout(long value) {
+        byte[] buffer = new byte[8];
+        long magnitude = Math.abs(value);
+        for (int i = 0; i < 8; i++) {
+            buffer[i] = (byte) (magnitude >>> (8 * i));
+        }
+        if (value < 0) {
+            buffer[7] |= (byte) 0x80;
+        }
+        return buffer;
+    }
+}
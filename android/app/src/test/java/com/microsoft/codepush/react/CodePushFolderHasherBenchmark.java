@@ -0,0 +1,80 @@
+package com.microsoft.codepush.react;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Times CodePushFolderHasher on a generated package with 1 to N threads, see {@link BenchmarkUtils}.
+ */
+public class CodePushFolderHasherBenchmark {
+    private File mFolder;
+
+    @Before
+    public void setUp() throws IOException {
+        mFolder = BenchmarkUtils.createTempFolder("hasher");
+    }
+
+    @After
+    public void tearDown() {
+        FileUtils.deleteDirectoryAtPath(mFolder.getPath());
+    }
+
+    @Test
+    public void hashesTheSameWithAnyThreadCount() throws IOException {
+        int fileCount = 200 * BenchmarkUtils.scale();
+        int maxThreads = Math.max(2, Runtime.getRuntime().availableProcessors());
+        int runs = BenchmarkUtils.runs();
+        long totalBytes = createPackage(mFolder, fileCount);
+        System.out.println("Hashing " + fileCount + " files, " + totalBytes / 1024 + " KB, "
+                + Runtime.getRuntime().availableProcessors() + " cores:");
+
+        ArrayList<String> expected = hash(1);
+        for (int threadCount = 1; threadCount <= maxThreads; threadCount++) {
+            long[] times = new long[runs];
+            for (int run = 0; run < runs; run++) {
+                long start = System.nanoTime();
+                ArrayList<String> manifest = hash(threadCount);
+                times[run] = System.nanoTime() - start;
+                assertEquals(expected, manifest);
+            }
+            BenchmarkUtils.printMedian(threadCount + " threads", times, totalBytes);
+        }
+    }
+
+    private ArrayList<String> hash(int threadCount) {
+        ArrayList<String> manifest = new CodePushFolderHasher(threadCount).hashFolderContents(mFolder.getPath());
+        Collections.sort(manifest);
+        return manifest;
+    }
+
+    // Mostly small JS and asset files, with a few large bundles, like a real package.
+    private static long createPackage(File folder, int fileCount) throws IOException {
+        Random random = new Random(1);
+        long totalBytes = 0;
+        for (int i = 0; i < fileCount; i++) {
+            int size = i % 100 == 0 ? 4 * 1024 * 1024 : 1024 + random.nextInt(32 * 1024);
+            byte[] data = new byte[size];
+            random.nextBytes(data);
+            File file = new File(folder, "assets/dir" + (i % 16) + "/file" + i);
+            file.getParentFile().mkdirs();
+            FileOutputStream output = new FileOutputStream(file);
+            try {
+                output.write(data);
+            } finally {
+                output.close();
+            }
+            totalBytes += size;
+        }
+        return totalBytes;
+    }
+}
@@ -0,0 +1,153 @@
+package com.microsoft.codepush.react;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.OkHttpClient;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs the segmented downloader against a local HTTP server.
+ */
+public class CodePushSegmentedDownloaderTest {
+    private static final int PACKAGE_SIZE = 5 * 1024 * 1024 + 123;
+    private static final int CONNECTION_COUNT = 4;
+
+    private final byte[] mPackage = new byte[PACKAGE_SIZE];
+    private final AtomicInteger mRangeRequests = new AtomicInteger();
+    private HttpServer mServer;
+    private File mDestination;
+
+    // What the server does, changed by each test before downloading.
+    private volatile boolean mSupportsRanges = true;
+    private volatile String mETag = "\"v1\"";
+    private volatile String mLastModified;
+    private volatile long mContentRangeShift;
+    private volatile String mChangedETagAfterProbe;
+
+    @Before
+    public void setUp() throws IOException {
+        new Random(1).nextBytes(mPackage);
+        mDestination = File.createTempFile("segmented", ".zip");
+        mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        mServer.setExecutor(Executors.newCachedThreadPool());
+        mServer.createContext("/package", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                serve(exchange);
+            }
+        });
+        mServer.start();
+    }
+
+    @After
+    public void tearDown() {
+        mServer.stop(0);
+        mDestination.delete();
+    }
+
+    @Test
+    public void downloadsAllSegments() throws IOException {
+        assertTrue(download());
+        assertArrayEquals(mPackage, Files.readAllBytes(mDestination.toPath()));
+        assertTrue(mRangeRequests.get() > CONNECTION_COUNT);
+    }
+
+    @Test
+    public void usesLastModifiedInsteadOfWeakETag() throws IOException {
+        mETag = "W/\"v1\"";
+        mLastModified = "Tue, 15 Oct 2024 10:00:00 GMT";
+        assertTrue(download());
+        assertArrayEquals(mPackage, Files.readAllBytes(mDestination.toPath()));
+    }
+
+    @Test
+    public void fallsBackWithoutRangeSupport() throws IOException {
+        mSupportsRanges = false;
+        assertFalse(download());
+    }
+
+    @Test
+    public void fallsBackWithoutValidator() throws IOException {
+        mETag = null;
+        assertFalse(download());
+        // A weak ETag can't be sent in If-Range either.
+        mETag = "W/\"v1\"";
+        assertFalse(download());
+    }
+
+    @Test
+    public void fallsBackOnMismatchedContentRange() throws IOException {
+        mContentRangeShift = 1;
+        assertFalse(download());
+        assertFalse(mDestination.exists());
+    }
+
+    @Test
+    public void fallsBackWhenPackageChangesDuringDownload() throws IOException {
+        mChangedETagAfterProbe = "\"v2\"";
+        assertFalse(download());
+        assertFalse(mDestination.exists());
+    }
+
+    private boolean download() throws IOException {
+        String url = "http://127.0.0.1:" + mServer.getAddress().getPort() + "/package";
+        CodePushSegmentedDownloader downloader = new CodePushSegmentedDownloader(
+                new CodePushOkHttpTransport(new OkHttpClient()), url, new HashMap<String, String>(), CONNECTION_COUNT);
+        return downloader.download(mDestination, new DownloadProgressCallback() {
+            @Override
+            public void call(long totalBytes, long receivedBytes, long decompressedBytes) {
+            }
+        });
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+        boolean isProbe = "bytes=0-0".equals(range);
+        String eTag = mChangedETagAfterProbe != null && !isProbe ? mChangedETagAfterProbe : mETag;
+        if (eTag != null) {
+            exchange.getResponseHeaders().add("ETag", eTag);
+        }
+        if (mLastModified != null) {
+            exchange.getResponseHeaders().add("Last-Modified", mLastModified);
+        }
+
+        boolean validatorMatches = ifRange == null || ifRange.equals(eTag) || ifRange.equals(mLastModified);
+        if (!mSupportsRanges || range == null || !validatorMatches) {
+            exchange.sendResponseHeaders(200, mPackage.length);
+            exchange.getResponseBody().write(mPackage);
+            exchange.close();
+            return;
+        }
+
+        mRangeRequests.incrementAndGet();
+        String[] bounds = range.substring("bytes=".length()).split("-");
+        int start = Integer.parseInt(bounds[0]);
+        int end = bounds.length > 1 ? Integer.parseInt(bounds[1]) : mPackage.length - 1;
+        long shift = isProbe ? 0 : mContentRangeShift;
+        exchange.getResponseHeaders().add("Content-Range",
+                "bytes " + (start + shift) + "-" + (end + shift) + "/" + mPackage.length);
+        exchange.sendResponseHeaders(206, end - start + 1);
+        exchange.getResponseBody().write(Arrays.copyOfRange(mPackage, start, end + 1));
+        exchange.close();
+    }
+}
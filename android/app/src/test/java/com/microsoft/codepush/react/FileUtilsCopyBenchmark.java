@@ -0,0 +1,167 @@
+package com.microsoft.codepush.react;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Times FileUtils.copyFile, copyDirectoryContents and moveDirectoryContents against the stream
+ * copy with an 8 KB buffer they replaced, see {@link BenchmarkUtils}.
+ */
+public class FileUtilsCopyBenchmark {
+    private final Random mRandom = new Random(1);
+    private File mFolder;
+
+    @Before
+    public void setUp() throws IOException {
+        mFolder = BenchmarkUtils.createTempFolder("copy");
+    }
+
+    @After
+    public void tearDown() {
+        FileUtils.deleteDirectoryAtPath(mFolder.getPath());
+    }
+
+    @Test
+    public void copiesAFile() throws IOException {
+        int runs = BenchmarkUtils.runs();
+        File source = new File(mFolder, "source");
+        File target = new File(mFolder, "target");
+        byte[] data = new byte[16 * 1024 * 1024 * BenchmarkUtils.scale()];
+        mRandom.nextBytes(data);
+        Files.write(source.toPath(), data);
+
+        long[][] times = new long[4][runs];
+        for (int run = 0; run < runs; run++) {
+            long start = System.nanoTime();
+            streamCopy(source, target, null);
+            times[0][run] = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            FileUtils.copyFile(source, target, null);
+            times[1][run] = System.nanoTime() - start;
+            assertArrayEquals(data, Files.readAllBytes(target.toPath()));
+
+            MessageDigest oldDigest = CodePushUpdateUtils.createHashDigest();
+            start = System.nanoTime();
+            streamCopy(source, target, oldDigest);
+            times[2][run] = System.nanoTime() - start;
+
+            MessageDigest newDigest = CodePushUpdateUtils.createHashDigest();
+            start = System.nanoTime();
+            FileUtils.copyFile(source, target, newDigest);
+            times[3][run] = System.nanoTime() - start;
+            assertArrayEquals(data, Files.readAllBytes(target.toPath()));
+            assertArrayEquals(oldDigest.digest(), newDigest.digest());
+        }
+        System.out.println("Copying a file of " + data.length / 1024 + " KB:");
+        BenchmarkUtils.printMedian("stream copy", times[0], data.length);
+        BenchmarkUtils.printMedian("copyFile", times[1], data.length);
+        BenchmarkUtils.printMedian("stream copy + SHA-256", times[2], data.length);
+        BenchmarkUtils.printMedian("copyFile + SHA-256", times[3], data.length);
+    }
+
+    @Test
+    public void copiesAndMovesAPackage() throws IOException {
+        int runs = BenchmarkUtils.runs();
+        int fileCount = 500 * BenchmarkUtils.scale();
+        File source = new File(mFolder, "package");
+        long totalBytes = createPackage(source, fileCount);
+
+        Map<String, String> expectedHashes = new HashMap<>();
+        for (String entry : new CodePushFolderHasher().hashFolderContents(source.getPath())) {
+            int separator = entry.lastIndexOf(':');
+            expectedHashes.put(entry.substring(0, separator), entry.substring(separator + 1));
+        }
+
+        long[][] times = new long[4][runs];
+        for (int run = 0; run < runs; run++) {
+            File copy = new File(mFolder, "copy" + run);
+            long start = System.nanoTime();
+            streamCopyDirectory(source, new File(mFolder, "stream" + run));
+            times[0][run] = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            FileUtils.copyDirectoryContents(source.getPath(), copy.getPath());
+            times[1][run] = System.nanoTime() - start;
+
+            Map<String, String> hashes = new HashMap<>();
+            start = System.nanoTime();
+            FileUtils.copyDirectoryContents(source.getPath(), new File(mFolder, "hashed" + run).getPath(), hashes);
+            times[2][run] = System.nanoTime() - start;
+            assertEquals(expectedHashes, hashes);
+
+            File moved = new File(mFolder, "moved" + run);
+            start = System.nanoTime();
+            FileUtils.moveDirectoryContents(copy.getPath(), moved.getPath());
+            times[3][run] = System.nanoTime() - start;
+            assertEquals(fileCount, CodePushFolderHasher.listFolderContents(moved.getPath()).size());
+        }
+        System.out.println("Copying " + fileCount + " files, " + totalBytes / 1024 + " KB:");
+        BenchmarkUtils.printMedian("stream copy", times[0], totalBytes);
+        BenchmarkUtils.printMedian("copyDirectoryContents", times[1], totalBytes);
+        BenchmarkUtils.printMedian("copyDirectoryContents + SHA-256", times[2], totalBytes);
+        BenchmarkUtils.printMedian("moveDirectoryContents", times[3], totalBytes);
+    }
+
+    // The copy FileUtils used before, with a new 8 KB buffer for every file.
+    private static void streamCopy(File source, File target, MessageDigest digest) throws IOException {
+        InputStream input = new BufferedInputStream(new FileInputStream(source));
+        OutputStream output = new FileOutputStream(target);
+        try {
+            byte[] buffer = new byte[8 * 1024];
+            int bytesRead;
+            while ((bytesRead = input.read(buffer)) > 0) {
+                output.write(buffer, 0, bytesRead);
+                if (digest != null) {
+                    digest.update(buffer, 0, bytesRead);
+                }
+            }
+        } finally {
+            input.close();
+            output.close();
+        }
+    }
+
+    private static void streamCopyDirectory(File source, File target) throws IOException {
+        target.mkdirs();
+        for (File file : source.listFiles()) {
+            File targetFile = new File(target, file.getName());
+            if (file.isDirectory()) {
+                streamCopyDirectory(file, targetFile);
+            } else {
+                streamCopy(file, targetFile, null);
+            }
+        }
+    }
+
+    // Small JS and asset files, like an unzipped package.
+    private long createPackage(File folder, int fileCount) throws IOException {
+        long totalBytes = 0;
+        for (int i = 0; i < fileCount; i++) {
+            byte[] data = new byte[1024 + mRandom.nextInt(60 * 1024)];
+            mRandom.nextBytes(data);
+            File file = new File(folder, "assets/dir" + (i % 20) + "/file" + i);
+            file.getParentFile().mkdirs();
+            Files.write(file.toPath(), data);
+            totalBytes += data.length;
+        }
+        return totalBytes;
+    }
+}
@@ -235,3 +235,464 @@ int bsPatchFile(const char* oldFile, const char* newFile, const char* patchFile)
   free(old);
   return 0;
 }
+
+/* Resident set size of the process in KB, or -1 if it can't be read. Unlike ru_maxrss, this
+   is the current value, so that the memory used by the patch can be told apart from what the
+   process used before. */
+static long currentRssKb(void)
+{
+#if defined(__linux__)
+	char statm[64];
+	long size, resident;
+	ssize_t length;
+	int fd = open("/proc/self/statm", O_RDONLY);
+	if (fd < 0)
+		return -1;
+	length = read(fd, statm, sizeof(statm) - 1);
+	close(fd);
+	if (length <= 0)
+		return -1;
+	statm[length] = '\0';
+	if (sscanf(statm, "%ld %ld", &size, &resident) != 2)
+		return -1;
+	return resident * (sysconf(_SC_PAGESIZE) / 1024);
+#else
+	return -1;
+#endif
+}
+
+struct rss_sample
+{
+	long baseKb, peakKb;
+};
+
+static void sampleRss(struct rss_sample* rss)
+{
+	long rssKb;
+	if (rss->baseKb < 0 || (rssKb = currentRssKb()) < 0)
+		return;
+	if (rssKb > rss->peakKb)
+		rss->peakKb = rssKb;
+}
+
+/* Writes the window out and drops the pages of the old file read since the last flush,
+   [*oldLow, *oldHigh), which otherwise count towards RSS. They are read back from the page
+   cache if needed again. */
+static int flushWindow(int fd, uint8_t* window, size_t* windowFill, const uint8_t* old,
+                       int64_t* oldLow, int64_t* oldHigh, struct rss_sample* rss)
+{
+	int64_t pageSize, start;
+
+	sampleRss(rss);
+	if (writeFileFromBuffer(fd, window, *windowFill) != (off_t)*windowFill)
+		return BSPATCH_ERROR_NEW_FILE;
+	*windowFill = 0;
+
+	if (old != NULL && *oldLow < *oldHigh) {
+		pageSize = sysconf(_SC_PAGESIZE);
+		start = *oldLow - *oldLow % pageSize;
+		madvise((void*)(old + start), *oldHigh - start, MADV_DONTNEED);
+	}
+	*oldLow = INT64_MAX;
+	*oldHigh = 0;
+	return BSPATCH_OK;
+}
+
+int bsPatchFileStreaming(const char* oldFile, const char* newFile, const char* patchFile, size_t windowSize, long* rssIncreaseKb,
+                         bspatch_progress progress, void* progressOpaque)
+{
+	FILE* f;
+	int oldFd = -1, newFd = -1;
+	uint8_t header[24];
+	uint8_t buf[8];
+	const uint8_t* old = NULL;
+	uint8_t* window = NULL;
+	size_t windowFill = 0;
+	int64_t oldsize = 0, newsize, oldpos = 0, newpos = 0;
+	int64_t ctrl[3], remaining, length, i;
+	int64_t oldLow = INT64_MAX, oldHigh = 0;
+	struct stat sb;
+	struct rss_sample rss;
+	int result = BSPATCH_OK;
+
+	rss.baseKb = rss.peakKb = rssIncreaseKb != NULL ? currentRssKb() : -1;
+
+	if (windowSize == 0)
+		windowSize = BSPATCH_DEFAULT_WINDOW_SIZE;
+
+	if ((f = fopen(patchFile, "rb")) == NULL)
+		return BSPATCH_ERROR_PATCH_FILE;
+
+	/* Read header */
+	if (fread(header, 1, 24, f) != 24) {
+		result = feof(f) ? BSPATCH_ERROR_CORRUPT_PATCH : BSPATCH_ERROR_PATCH_FILE;
+		goto cleanup;
+	}
+	if (memcmp(header, "ENDSLEY/BSDIFF43", 16) != 0 || (newsize = offtin(header + 16)) < 0) {
+		result = BSPATCH_ERROR_CORRUPT_PATCH;
+		goto cleanup;
+	}
+
+	/* Map the old file instead of reading it, its pages stay in the page cache */
+	if ((oldFd = open(oldFile, O_RDONLY, 0)) < 0 || fstat(oldFd, &sb) != 0) {
+		result = BSPATCH_ERROR_OLD_FILE;
+		goto cleanup;
+	}
+	oldsize = sb.st_size;
+	if (oldsize > 0 && (old = mmap(NULL, oldsize, PROT_READ, MAP_PRIVATE, oldFd, 0)) == MAP_FAILED) {
+		old = NULL;
+		result = BSPATCH_ERROR_OLD_FILE;
+		goto cleanup;
+	}
+
+	if ((newFd = open(newFile, O_CREAT | O_TRUNC | O_WRONLY, 0666)) < 0) {
+		result = BSPATCH_ERROR_NEW_FILE;
+		goto cleanup;
+	}
+	if ((window = malloc(windowSize)) == NULL) {
+		result = BSPATCH_ERROR_NO_MEMORY;
+		goto cleanup;
+	}
+
+	while (newpos < newsize) {
+		/* Read control data */
+		for (i = 0; i <= 2; i++) {
+			if (fread(buf, 1, 8, f) != 8) {
+				result = BSPATCH_ERROR_CORRUPT_PATCH;
+				goto cleanup;
+			}
+			ctrl[i] = offtin(buf);
+		}
+
+		/* Sanity-check */
+		if (ctrl[0] < 0 || ctrl[0] > INT_MAX ||
+			ctrl[1] < 0 || ctrl[1] > INT_MAX ||
+			newpos + ctrl[0] + ctrl[1] > newsize) {
+			result = BSPATCH_ERROR_CORRUPT_PATCH;
+			goto cleanup;
+		}
+
+		/* Diff string plus old data, then the extra string, one window at a time */
+		for (remaining = ctrl[0] + ctrl[1]; remaining > 0; remaining -= length) {
+			length = remaining;
+			if (length > (int64_t)(windowSize - windowFill))
+				length = windowSize - windowFill;
+			if (fread(window + windowFill, 1, length, f) != (size_t)length) {
+				result = BSPATCH_ERROR_CORRUPT_PATCH;
+				goto cleanup;
+			}
+
+			if (remaining > ctrl[1]) {
+				int64_t diffLength = remaining - ctrl[1] < length ? remaining - ctrl[1] : length;
+				for (i = 0; i < diffLength; i++)
+					if ((oldpos + i >= 0) && (oldpos + i < oldsize))
+						window[windowFill + i] += old[oldpos + i];
+				if (oldpos < oldsize && oldpos + diffLength > 0) {
+					if (oldpos < oldLow)
+						oldLow = oldpos > 0 ? oldpos : 0;
+					if (oldpos + diffLength > oldHigh)
+						oldHigh = oldpos + diffLength < oldsize ? oldpos + diffLength : oldsize;
+				}
+				oldpos += diffLength;
+			}
+
+			windowFill += length;
+			newpos += length;
+			if (windowFill == windowSize) {
+				if ((result = flushWindow(newFd, window, &windowFill, old, &oldLow, &oldHigh, &rss)) != BSPATCH_OK)
+					goto cleanup;
+				if (progress != NULL && progress(progressOpaque, newpos, newsize)) {
+					result = BSPATCH_ERROR_CANCELLED;
+					goto cleanup;
+				}
+			}
+		}
+
+		/* Adjust pointers */
+		oldpos += ctrl[2];
+	}
+
+	result = flushWindow(newFd, window, &windowFill, old, &oldLow, &oldHigh, &rss);
+	if (result == BSPATCH_OK && progress != NULL && progress(progressOpaque, newpos, newsize))
+		result = BSPATCH_ERROR_CANCELLED;
+
+cleanup:
+	if (newFd >= 0 && close(newFd) != 0 && result == BSPATCH_OK)
+		result = BSPATCH_ERROR_NEW_FILE;
+	if (old != NULL)
+		munmap((void*)old, oldsize);
+	if (oldFd >= 0)
+		close(oldFd);
+	free(window);
+	fclose(f);
+
+	if (rssIncreaseKb != NULL)
+		*rssIncreaseKb = rss.baseKb >= 0 ? rss.peakKb - rss.baseKb : -1;
+	return result;
+}
+
+
+struct patch_block
+{
+	int64_t newOffset, newLength, oldOffset, patchOffset, patchLength;
+	uint32_t crc;
+};
+
+struct multi_block_patch
+{
+	const uint8_t* old;
+	int64_t oldsize;
+	uint8_t* new;
+	int64_t newsize;
+	const uint8_t* patch;
+	struct patch_block* blocks;
+	int64_t blockCount;
+	int64_t nextBlock;
+	int64_t written;
+	int result;
+	pthread_mutex_t lock;
+	pthread_t caller;
+	bspatch_progress progress;
+	void* progressOpaque;
+};
+
+static uint32_t crcTable[256];
+static pthread_once_t crcTableOnce = PTHREAD_ONCE_INIT;
+
+static void initCrcTable(void)
+{
+	uint32_t i, j, c;
+	for (i = 0; i < 256; i++) {
+		c = i;
+		for (j = 0; j < 8; j++)
+			c = (c & 1) ? 0xEDB88320 ^ (c >> 1) : c >> 1;
+		crcTable[i] = c;
+	}
+}
+
+/* CRC-32 as computed by zlib */
+static uint32_t blockCrc32(const uint8_t* data, int64_t length)
+{
+	uint32_t c = 0xFFFFFFFF;
+	int64_t i;
+	pthread_once(&crcTableOnce, initCrcTable);
+	for (i = 0; i < length; i++)
+		c = crcTable[(c ^ data[i]) & 0xFF] ^ (c >> 8);
+	return c ^ 0xFFFFFFFF;
+}
+
+static int patchBlock(const struct multi_block_patch* job, const struct patch_block* block)
+{
+	const uint8_t* p = job->patch + block->patchOffset;
+	const uint8_t* end = p + block->patchLength;
+	uint8_t* out = job->new + block->newOffset;
+	int64_t newpos = 0, oldpos = block->oldOffset;
+	int64_t ctrl[3], i;
+
+	while (newpos < block->newLength) {
+		/* Read control data */
+		if (end - p < 24)
+			return BSPATCH_ERROR_CORRUPT_PATCH;
+		for (i = 0; i <= 2; i++)
+			ctrl[i] = offtin((uint8_t*)p + i * 8);
+		p += 24;
+
+		/* Sanity-check */
+		if (ctrl[0] < 0 || ctrl[0] > INT_MAX ||
+			ctrl[1] < 0 || ctrl[1] > INT_MAX ||
+			newpos + ctrl[0] + ctrl[1] > block->newLength ||
+			end - p < ctrl[0] + ctrl[1])
+			return BSPATCH_ERROR_CORRUPT_PATCH;
+
+		/* Diff string plus old data */
+		memcpy(out + newpos, p, ctrl[0]);
+		for (i = 0; i < ctrl[0]; i++)
+			if ((oldpos + i >= 0) && (oldpos + i < job->oldsize))
+				out[newpos + i] += job->old[oldpos + i];
+		p += ctrl[0];
+		newpos += ctrl[0];
+		oldpos += ctrl[0];
+
+		/* Extra string */
+		memcpy(out + newpos, p, ctrl[1]);
+		p += ctrl[1];
+		newpos += ctrl[1];
+		oldpos += ctrl[2];
+	}
+
+	return blockCrc32(out, block->newLength) == block->crc ? BSPATCH_OK : BSPATCH_ERROR_CHECKSUM;
+}
+
+static void* patchBlocks(void* arg)
+{
+	struct multi_block_patch* job = (struct multi_block_patch*)arg;
+	int64_t index, written;
+	int result;
+
+	for (;;) {
+		pthread_mutex_lock(&job->lock);
+		index = job->result == BSPATCH_OK && job->nextBlock < job->blockCount ? job->nextBlock++ : -1;
+		pthread_mutex_unlock(&job->lock);
+		if (index < 0)
+			return NULL;
+
+		result = patchBlock(job, &job->blocks[index]);
+		pthread_mutex_lock(&job->lock);
+		written = job->written += job->blocks[index].newLength;
+		pthread_mutex_unlock(&job->lock);
+
+		/* The callback may need the calling thread, e.g. to call back into Java */
+		if (result == BSPATCH_OK && job->progress != NULL && pthread_equal(pthread_self(), job->caller) &&
+			job->progress(job->progressOpaque, written, job->newsize))
+			result = BSPATCH_ERROR_CANCELLED;
+		if (result != BSPATCH_OK) {
+			pthread_mutex_lock(&job->lock);
+			if (job->result == BSPATCH_OK)
+				job->result = result;
+			pthread_mutex_unlock(&job->lock);
+			return NULL;
+		}
+	}
+}
+
+int bsPatchFileMultiBlock(const char* oldFile, const char* newFile, const char* patchFile, int threadCount,
+                          bspatch_progress progress, void* progressOpaque)
+{
+	int patchFd = -1, oldFd = -1, newFd = -1;
+	const uint8_t* patch = NULL;
+	const uint8_t* old = NULL;
+	uint8_t* new = NULL;
+	int64_t patchsize = 0, oldsize = 0, newsize = 0, blockCount, offset, i;
+	struct patch_block* blocks = NULL;
+	pthread_t* threads = NULL;
+	int threadsStarted = 0;
+	struct multi_block_patch job;
+	struct stat sb;
+	int result = BSPATCH_OK;
+
+	/* Map the patch, the block streams are read straight from it */
+	if ((patchFd = open(patchFile, O_RDONLY, 0)) < 0 || fstat(patchFd, &sb) != 0) {
+		result = BSPATCH_ERROR_PATCH_FILE;
+		goto cleanup;
+	}
+	patchsize = sb.st_size;
+	if (patchsize < BSPATCH_MULTI_BLOCK_HEADER_SIZE) {
+		result = BSPATCH_ERROR_CORRUPT_PATCH;
+		goto cleanup;
+	}
+	if ((patch = mmap(NULL, patchsize, PROT_READ, MAP_PRIVATE, patchFd, 0)) == MAP_FAILED) {
+		patch = NULL;
+		result = BSPATCH_ERROR_PATCH_FILE;
+		goto cleanup;
+	}
+
+	/* Read the header and the block table */
+	newsize = offtin((uint8_t*)patch + 16);
+	blockCount = offtin((uint8_t*)patch + 24);
+	if (memcmp(patch, BSPATCH_MULTI_BLOCK_MAGIC, 16) != 0 || newsize < 0 || blockCount < 0 ||
+		blockCount > (patchsize - BSPATCH_MULTI_BLOCK_HEADER_SIZE) / BSPATCH_MULTI_BLOCK_ENTRY_SIZE) {
+		result = BSPATCH_ERROR_CORRUPT_PATCH;
+		goto cleanup;
+	}
+	if (blockCount > 0 && (blocks = malloc(blockCount * sizeof(struct patch_block))) == NULL) {
+		result = BSPATCH_ERROR_NO_MEMORY;
+		goto cleanup;
+	}
+	for (i = 0, offset = 0; i < blockCount; i++) {
+		uint8_t* entry = (uint8_t*)patch + BSPATCH_MULTI_BLOCK_HEADER_SIZE + i * BSPATCH_MULTI_BLOCK_ENTRY_SIZE;
+		blocks[i].newOffset = offtin(entry);
+		blocks[i].newLength = offtin(entry + 8);
+		blocks[i].oldOffset = offtin(entry + 16);
+		blocks[i].patchOffset = offtin(entry + 24);
+		blocks[i].patchLength = offtin(entry + 32);
+		blocks[i].crc = (uint32_t)offtin(entry + 40);
+
+		/* Sanity-check, the blocks must follow each other and their streams be in the patch */
+		if (blocks[i].newOffset != offset || blocks[i].newLength < 0 || blocks[i].newLength > newsize - offset ||
+			blocks[i].patchOffset < 0 || blocks[i].patchLength < 0 ||
+			blocks[i].patchOffset > patchsize || blocks[i].patchLength > patchsize - blocks[i].patchOffset) {
+			result = BSPATCH_ERROR_CORRUPT_PATCH;
+			goto cleanup;
+		}
+		offset += blocks[i].newLength;
+	}
+	if (offset != newsize) {
+		result = BSPATCH_ERROR_CORRUPT_PATCH;
+		goto cleanup;
+	}
+
+	/* Map the old file */
+	if ((oldFd = open(oldFile, O_RDONLY, 0)) < 0 || fstat(oldFd, &sb) != 0) {
+		result = BSPATCH_ERROR_OLD_FILE;
+		goto cleanup;
+	}
+	oldsize = sb.st_size;
+	if (oldsize > 0 && (old = mmap(NULL, oldsize, PROT_READ, MAP_PRIVATE, oldFd, 0)) == MAP_FAILED) {
+		old = NULL;
+		result = BSPATCH_ERROR_OLD_FILE;
+		goto cleanup;
+	}
+
+	/* Preallocate the new file and map it, so that every block can be written in place */
+	if ((newFd = open(newFile, O_CREAT | O_TRUNC | O_RDWR, 0666)) < 0 || ftruncate(newFd, newsize) != 0) {
+		result = BSPATCH_ERROR_NEW_FILE;
+		goto cleanup;
+	}
+	if (newsize > 0 && (new = mmap(NULL, newsize, PROT_READ | PROT_WRITE, MAP_SHARED, newFd, 0)) == MAP_FAILED) {
+		new = NULL;
+		result = BSPATCH_ERROR_NEW_FILE;
+		goto cleanup;
+	}
+
+	job.old = old;
+	job.oldsize = oldsize;
+	job.new = new;
+	job.newsize = newsize;
+	job.patch = patch;
+	job.blocks = blocks;
+	job.blockCount = blockCount;
+	job.nextBlock = 0;
+	job.written = 0;
+	job.result = BSPATCH_OK;
+	job.caller = pthread_self();
+	job.progress = progress;
+	job.progressOpaque = progressOpaque;
+	pthread_mutex_init(&job.lock, NULL);
+
+	/* The calling thread patches blocks as well */
+	if (threadCount > blockCount)
+		threadCount = (int)blockCount;
+	if (threadCount > 1 && (threads = malloc((threadCount - 1) * sizeof(pthread_t))) != NULL) {
+		for (; threadsStarted < threadCount - 1; threadsStarted++)
+			if (pthread_create(&threads[threadsStarted], NULL, patchBlocks, &job) != 0)
+				break;
+	}
+	patchBlocks(&job);
+	for (i = 0; i < threadsStarted; i++)
+		pthread_join(threads[i], NULL);
+	pthread_mutex_destroy(&job.lock);
+	result = job.result;
+	if (result == BSPATCH_OK && progress != NULL && progress(progressOpaque, newsize, newsize))
+		result = BSPATCH_ERROR_CANCELLED;
+
+	if (new != NULL && munmap(new, newsize) != 0 && result == BSPATCH_OK)
+		result = BSPATCH_ERROR_NEW_FILE;
+	new = NULL;
+
+cleanup:
+	if (new != NULL)
+		munmap(new, newsize);
+	if (newFd >= 0 && close(newFd) != 0 && result == BSPATCH_OK)
+		result = BSPATCH_ERROR_NEW_FILE;
+	if (old != NULL)
+		munmap((void*)old, oldsize);
+	if (oldFd >= 0)
+		close(oldFd);
+	if (patch != NULL)
+		munmap((void*)patch, patchsize);
+	if (patchFd >= 0)
+		close(patchFd);
+	free(blocks);
+	free(threads);
+	return result;
+}
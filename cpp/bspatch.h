@@ -43,6 +43,29 @@
 #include <sys/stat.h>
 #include <unistd.h>
 #include <fcntl.h>
+#include <sys/mman.h>
+#include <pthread.h>
+
+/* Results of bsPatchFileStreaming */
+#define BSPATCH_OK 0
+#define BSPATCH_ERROR_PATCH_FILE 1
+#define BSPATCH_ERROR_CORRUPT_PATCH 2
+#define BSPATCH_ERROR_OLD_FILE 3
+#define BSPATCH_ERROR_NEW_FILE 4
+#define BSPATCH_ERROR_NO_MEMORY 5
+#define BSPATCH_ERROR_CHECKSUM 6
+#define BSPATCH_ERROR_CANCELLED 7
+
+#define BSPATCH_DEFAULT_WINDOW_SIZE (1024 * 1024)
+
+/* Multi-block patches, see bsPatchFileMultiBlock */
+#define BSPATCH_MULTI_BLOCK_MAGIC "CODEPUSH/MBDIFF1"
+#define BSPATCH_MULTI_BLOCK_HEADER_SIZE 32
+#define BSPATCH_MULTI_BLOCK_ENTRY_SIZE 48
+
+/* Called with the number of bytes of the new file written so far. Returning non-zero cancels
+   the patch, which then fails with BSPATCH_ERROR_CANCELLED. */
+typedef int (*bspatch_progress)(void* opaque, int64_t written, int64_t total);
 
 struct bspatch_stream
 {
@@ -53,4 +76,28 @@ struct bspatch_stream
 int bspatch(const uint8_t* oldbuf, int64_t oldsize, uint8_t* newbuf, int64_t newsize, struct bspatch_stream* stream);
 int bsPatchFile(const char* oldFile, const char* newFile, const char* patchFile);
 
+/* Like bsPatchFile, but maps the old file and writes the new one through a window of
+   windowSize bytes, so that memory use doesn't grow with the file sizes. Returns one of
+   the BSPATCH_ results instead of exiting on errors. If rssIncreaseKb is not NULL, it
+   receives how far the RSS of the process rose above its value at the start, sampled at
+   every window, or -1 where the RSS can't be read. progress, if not NULL, is called after
+   every window written. */
+int bsPatchFileStreaming(const char* oldFile, const char* newFile, const char* patchFile, size_t windowSize, long* rssIncreaseKb,
+                         bspatch_progress progress, void* progressOpaque);
+
+/* Applies a multi-block patch on up to threadCount threads. The new file is split into
+   blocks that each have their own control/diff/extra stream and CRC-32, so they can be
+   patched independently into the preallocated new file. All integers are in the 8 byte
+   format of bsdiff:
+
+     "CODEPUSH/MBDIFF1", newSize, blockCount
+     blockCount times: newOffset, newLength, oldOffset, patchOffset, patchLength, crc32
+     the stream of each block at patchOffset from the start of the patch
+
+   The blocks must cover the new file in order. The old position of each block starts at
+   oldOffset. Returns one of the BSPATCH_ results. progress, if not NULL, is only called
+   from the calling thread, after each block it patched. */
+int bsPatchFileMultiBlock(const char* oldFile, const char* newFile, const char* patchFile, int threadCount,
+                          bspatch_progress progress, void* progressOpaque);
+
 #endif
@@ -1,4 +1,6 @@
 
+#include "react-native-bs-diff-patch.h"
+
 extern "C" {
   #include "bsdiff.h"
   #include "bspatch.h"
@@ -6,6 +8,17 @@ extern "C" {
 
 namespace bsdiffpatch {
 
+  struct ProgressAdapter {
+    ProgressCallback callback;
+    void* context;
+  };
+
+  // Turns the bool "continue" result of ProgressCallback into the non-zero "cancel" of bspatch_progress.
+  static int reportProgress(void* opaque, int64_t written, int64_t total) {
+    ProgressAdapter* adapter = static_cast<ProgressAdapter*>(opaque);
+    return adapter->callback(adapter->context, written, total) ? 0 : 1;
+  }
+
   int diffFile(const char* oldFile, const char* newFile, const char* patchFile) {
     return bsDiffFile(oldFile, newFile, patchFile);
   }
@@ -13,4 +26,18 @@ namespace bsdiffpatch {
   int patchFile(const char* oldFile, const char* newFile, const char* patchFile) {
     return bsPatchFile(oldFile, newFile, patchFile);
   }
+
+  int patchFileStreaming(const char* oldFile, const char* newFile, const char* patchFile, size_t windowSize, long* rssIncreaseKb,
+                         ProgressCallback progress, void* progressContext) {
+    ProgressAdapter adapter = {progress, progressContext};
+    return bsPatchFileStreaming(oldFile, newFile, patchFile, windowSize, rssIncreaseKb,
+                                progress != nullptr ? reportProgress : nullptr, &adapter);
+  }
+
+  int patchFileMultiBlock(const char* oldFile, const char* newFile, const char* patchFile, int threadCount,
+                          ProgressCallback progress, void* progressContext) {
+    ProgressAdapter adapter = {progress, progressContext};
+    return bsPatchFileMultiBlock(oldFile, newFile, patchFile, threadCount,
+                                 progress != nullptr ? reportProgress : nullptr, &adapter);
+  }
 }
@@ -1,9 +1,19 @@
 #ifndef BSDIFFPATCH_H
 #define BSDIFFPATCH_H
 
+#include <stddef.h>
+#include <stdint.h>
+
 namespace bsdiffpatch {
   int diffFile(const char* oldFile, const char* newFile, const char* patchFile);
   int patchFile(const char* oldFile, const char* newFile, const char* patchFile);
+  // Called with the number of bytes written so far, returns false to cancel the patch.
+  typedef bool (*ProgressCallback)(void* context, int64_t written, int64_t total);
+
+  int patchFileStreaming(const char* oldFile, const char* newFile, const char* patchFile, size_t windowSize, long* rssIncreaseKb,
+                         ProgressCallback progress, void* progressContext);
+  int patchFileMultiBlock(const char* oldFile, const char* newFile, const char* patchFile, int threadCount,
+                          ProgressCallback progress, void* progressContext);
 }
 
 #endif /* BSDIFFPATCH_H */
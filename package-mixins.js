@@ -7,7 +7,7 @@ import log from "./logging";
 module.exports = (NativeCodePush) => {
   const remote = (reportStatusDownload) => {
     return {
-      async download(downloadProgressCallback, downloadStatusCallback) {
+      async download(downloadProgressCallback, downloadStatusCallback, downloadOptions = {}) {
         if (!this.downloadUrl) {
           throw new Error("Cannot download an update without a download url");
         }
@@ -34,6 +34,10 @@ module.exports = (NativeCodePush) => {
         try {
           const updatePackageCopy = Object.assign({}, this);
           Object.keys(updatePackageCopy).forEach((key) => (typeof updatePackageCopy[key] === 'function') && delete updatePackageCopy[key]);
+          if (downloadOptions.decompressionThreadCount) {
+            // Read by the native module for this download only, it is not saved with the package.
+            updatePackageCopy.decompressionThreadCount = downloadOptions.decompressionThreadCount;
+          }
 
           const downloadedPackage = await NativeCodePush.downloadUpdate(updatePackageCopy, !!downloadProgressCallback);
 
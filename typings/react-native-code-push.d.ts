@@ -20,6 +20,22 @@ export interface DownloadProgress {
      * The number of bytes downloaded thus far.
      */
     receivedBytes: number;
+
+    /**
+     * The number of bytes downloaded thus far after decoding a compressed transfer encoding.
+     * Equals receivedBytes for uncompressed downloads (Android only).
+     */
+    decompressedBytes?: number;
+
+    /**
+     * The smoothed download rate in bytes per second (Android only).
+     */
+    bytesPerSecond?: number;
+
+    /**
+     * The estimated number of seconds until the download completes, or -1 if unknown (Android only).
+     */
+    estimatedTimeRemaining?: number;
 }
 
 export interface LocalPackage extends Package {
@@ -91,8 +107,11 @@ export interface RemotePackage extends Package {
      * Downloads the available update from the CodePush service.
      *
      * @param downloadProgressCallback An optional callback that allows tracking the progress of the update while it is being downloaded.
+     * @param downloadStatusCallback An optional callback that is notified as the update moves through the download stages.
+     * While a patch is being applied it also receives "PATCH_PROGRESS" events with the bytes written so far.
+     * @param downloadOptions Optional settings for this download, see the matching `SyncOptions` properties.
      */
-    download(downloadProgressCallback?: DownloadProgressCallback): Promise<LocalPackage>;
+    download(downloadProgressCallback?: DownloadProgressCallback, downloadStatusCallback?: (status: { name: string, writtenBytes?: number, totalBytes?: number }) => void, downloadOptions?: DownloadOptions): Promise<LocalPackage>;
 
     /**
      * The URL at which the package is available for download.
@@ -100,6 +119,13 @@ export interface RemotePackage extends Package {
     downloadUrl: string;
 }
 
+export interface DownloadOptions {
+    /**
+     * Specifies the number of threads used to decompress the Brotli compressed files of the update (Android only). Defaults to 1.
+     */
+    decompressionThreadCount?: number;
+}
+
 export interface SyncOptions {
     /**
      * Specifies the deployment key you want to query for an update against. By default, this value is derived from the Info.plist
@@ -144,6 +170,12 @@ export interface SyncOptions {
      * one or more of the default values.
      */
     rollbackRetryOptions?: RollbackRetryOptions;
+
+    /**
+     * Specifies the number of threads used to decompress the Brotli compressed files of an update (Android only).
+     * Defaults to 1, which has the effect of decompressing each file while the update is being unzipped.
+     */
+    decompressionThreadCount?: number;
 }
 
 export interface UpdateDialog {